@@ -0,0 +1,80 @@
+package com.franchise.api.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.franchise.api.model.Franchise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encode time of a franchise as JSON and as CBOR, each with and without gzip. The wire
+ * size of every variant is printed once per trial, since JMH only reports times.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+
+    @Param({"10", "1000"})
+    public int branches;
+
+    @Param({"10", "100"})
+    public int productsPerBranch;
+
+    private ObjectWriter jsonWriter;
+    private ObjectWriter cborWriter;
+    private Franchise franchise;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        jsonWriter = Jackson2ObjectMapperBuilder.json().build().writerFor(Franchise.class);
+        ObjectMapper cbor = Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+        cborWriter = cbor.writerFor(Franchise.class);
+        franchise = Fixtures.franchise(branches, productsPerBranch);
+
+        System.out.printf("%nWire size (bytes) branches=%d productsPerBranch=%d: json=%d json+gzip=%d cbor=%d cbor+gzip=%d%n",
+                branches, productsPerBranch, json().length, jsonGzip().length, cbor().length, cborGzip().length);
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return jsonWriter.writeValueAsBytes(franchise);
+    }
+
+    @Benchmark
+    public byte[] jsonGzip() throws IOException {
+        return gzip(jsonWriter);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws IOException {
+        return cborWriter.writeValueAsBytes(franchise);
+    }
+
+    @Benchmark
+    public byte[] cborGzip() throws IOException {
+        return gzip(cborWriter);
+    }
+
+    private byte[] gzip(ObjectWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            writer.writeValue(out, franchise);
+        }
+        return bytes.toByteArray();
+    }
+}
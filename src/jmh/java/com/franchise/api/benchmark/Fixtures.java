@@ -0,0 +1,69 @@
+package com.franchise.api.benchmark;
+
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generates deterministic franchises for the benchmarks; the same sizes always produce
+ * the same ids and stock values.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static Franchise franchise(int branches, int productsPerBranch) {
+        SplittableRandom random = new SplittableRandom(42);
+        List<Branch> branchList = new ArrayList<>(branches);
+        for (int b = 0; b < branches; b++) {
+            List<Product> products = new ArrayList<>(productsPerBranch);
+            for (int p = 0; p < productsPerBranch; p++) {
+                products.add(Product.builder()
+                        .id(productId(b, p))
+                        .name("Product " + p)
+                        .stock(random.nextInt(1000))
+                        .build());
+            }
+            branchList.add(Branch.builder()
+                    .id(branchId(b))
+                    .name("Branch " + b)
+                    .products(products)
+                    .build());
+        }
+        return Franchise.builder()
+                .id("franchise-0")
+                .name("Franchise")
+                .branches(branchList)
+                .build();
+    }
+
+    static List<TopProductResponse> topProducts(Franchise franchise) {
+        List<TopProductResponse> top = new ArrayList<>(franchise.getBranches().size());
+        for (Branch branch : franchise.getBranches()) {
+            branch.getProducts().stream()
+                    .max((a, b) -> Integer.compare(a.getStock(), b.getStock()))
+                    .ifPresent(product -> top.add(TopProductResponse.builder()
+                            .productId(product.getId())
+                            .productName(product.getName())
+                            .stock(product.getStock())
+                            .branchId(branch.getId())
+                            .branchName(branch.getName())
+                            .build()));
+        }
+        return top;
+    }
+
+    static String branchId(int index) {
+        return "branch-" + index;
+    }
+
+    static String productId(int branch, int index) {
+        return "product-" + branch + "-" + index;
+    }
+}
@@ -0,0 +1,89 @@
+package com.franchise.api.benchmark;
+
+import com.franchise.api.id.IdGenerator;
+import com.franchise.api.id.ObjectIdGenerator;
+import com.franchise.api.id.UuidGenerator;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of minting a branch or product id with each {@link IdGenerator}, single-threaded and
+ * contended. The BSON size of a franchise with each kind of id is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IdBenchmark {
+
+    private static final int BRANCHES = 100;
+    private static final int PRODUCTS_PER_BRANCH = 100;
+
+    private final IdGenerator objectIds = new ObjectIdGenerator();
+    private final IdGenerator uuids = new UuidGenerator();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+        System.out.printf("%nBSON size (bytes) of %d branches x %d products: uuid=%d object-id=%d%n",
+                BRANCHES, PRODUCTS_PER_BRANCH, bsonSize(converter, uuids), bsonSize(converter, objectIds));
+    }
+
+    @Benchmark
+    public String objectId() {
+        return objectIds.nextId();
+    }
+
+    @Benchmark
+    public String uuid() {
+        return uuids.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String objectIdContended() {
+        return objectIds.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String uuidContended() {
+        return uuids.nextId();
+    }
+
+    private static int bsonSize(MappingMongoConverter converter, IdGenerator ids) {
+        List<Branch> branches = new ArrayList<>(BRANCHES);
+        for (int b = 0; b < BRANCHES; b++) {
+            List<Product> products = new ArrayList<>(PRODUCTS_PER_BRANCH);
+            for (int p = 0; p < PRODUCTS_PER_BRANCH; p++) {
+                products.add(Product.builder().id(ids.nextId()).name("Product " + p).stock(p).build());
+            }
+            branches.add(Branch.builder().id(ids.nextId()).name("Branch " + b).products(products).build());
+        }
+        Franchise franchise = Franchise.builder().id(new ObjectIdGenerator().nextId()).name("Franchise").branches(branches).build();
+
+        Document document = new Document();
+        converter.write(franchise, document);
+        return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+    }
+}
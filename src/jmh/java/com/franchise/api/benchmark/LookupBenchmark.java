@@ -0,0 +1,96 @@
+package com.franchise.api.benchmark;
+
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Branch and product lookup by id: the indexed accessors against the linear stream scan
+ * they replaced, for growing list sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LookupBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private Franchise franchise;
+    private Branch branch;
+    private String[] branchIds;
+    private String[] productIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // One wide franchise for branch lookups and one wide branch for product lookups.
+        franchise = Fixtures.franchise(size, 1);
+        branch = Fixtures.franchise(1, size).getBranches().get(0);
+
+        SplittableRandom random = new SplittableRandom(7);
+        branchIds = new String[1024];
+        productIds = new String[1024];
+        for (int i = 0; i < branchIds.length; i++) {
+            branchIds[i] = Fixtures.branchId(random.nextInt(size));
+            productIds[i] = Fixtures.productId(0, random.nextInt(size));
+        }
+    }
+
+    @Benchmark
+    public Branch findBranch() {
+        return franchise.findBranch(branchIds[next()]).orElse(null);
+    }
+
+    @Benchmark
+    public Branch scanBranch() {
+        String id = branchIds[next()];
+        return franchise.getBranches().stream()
+                .filter(b -> b.getId().equals(id))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Product findProduct() {
+        return branch.findProduct(productIds[next()]).orElse(null);
+    }
+
+    @Benchmark
+    public Product scanProduct() {
+        String id = productIds[next()];
+        return branch.getProducts().stream()
+                .filter(p -> p.getId().equals(id))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * First lookup on a freshly loaded document, which pays for building the index; this is
+     * what a request that reads a franchise once and looks up one id costs.
+     */
+    @Benchmark
+    public Product findProductCold() {
+        Branch copy = Branch.builder()
+                .id(branch.getId())
+                .products(branch.getProducts())
+                .build();
+        return copy.findProduct(productIds[next()]).orElse(null);
+    }
+
+    private int next() {
+        return next++ & (branchIds.length - 1);
+    }
+}
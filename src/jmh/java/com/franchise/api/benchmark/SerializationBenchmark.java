@@ -0,0 +1,60 @@
+package com.franchise.api.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Franchise;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the two largest response bodies, using an ObjectMapper built
+ * the way Spring Boot builds the one WebFlux writes responses with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int branches;
+
+    @Param({"10", "100"})
+    public int productsPerBranch;
+
+    private ObjectWriter franchiseWriter;
+    private ObjectWriter topProductsWriter;
+    private Franchise franchise;
+    private List<TopProductResponse> topProducts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        franchiseWriter = mapper.writerFor(Franchise.class);
+        topProductsWriter = mapper.writerFor(mapper.getTypeFactory()
+                .constructCollectionType(List.class, TopProductResponse.class));
+        franchise = Fixtures.franchise(branches, productsPerBranch);
+        topProducts = Fixtures.topProducts(franchise);
+    }
+
+    @Benchmark
+    public byte[] franchise() throws Exception {
+        return franchiseWriter.writeValueAsBytes(franchise);
+    }
+
+    @Benchmark
+    public byte[] topProducts() throws Exception {
+        return topProductsWriter.writeValueAsBytes(topProducts);
+    }
+}
@@ -0,0 +1,158 @@
+package com.franchise.api.benchmark;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.BulkStockUpdateResult;
+import com.franchise.api.dto.RequestDTOs.AdjustStockRequest;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.RequestDTOs.CreateProductRequest;
+import com.franchise.api.dto.RequestDTOs.UpdateStockRequest;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.event.StockEventBroadcaster;
+import com.franchise.api.id.ObjectIdGenerator;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.BulkStockWrite;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.repository.FranchiseRepository;
+import com.franchise.api.repository.ProductStore;
+import com.franchise.api.service.FranchiseService;
+import com.franchise.api.service.StockBulkService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service code of the top-products read and the stock mutations, against a repository
+ * and a store that answer at once with canned results: the per-request overhead the service
+ * adds on top of MongoDB (operator chains, cache invalidation and reload, bulk batching and
+ * outcome classification). Database time is measured by {@code gradle loadTest}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceBenchmark {
+
+    private static final int PRODUCTS_PER_BRANCH = 50;
+
+    /** Items per bulk call, one bulk write at the default batch size. */
+    private static final int BULK_ITEMS = 1000;
+
+    @Param({"10", "100"})
+    public int branches;
+
+    private FranchiseService franchiseService;
+    private StockBulkService stockBulkService;
+    private List<BulkStockUpdateItem> bulkItems;
+    private List<BulkStockUpdateItem> rejectedBulkItems;
+    private Product product;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Franchise franchise = Fixtures.franchise(branches, PRODUCTS_PER_BRANCH);
+        List<TopProductResponse> top = Fixtures.topProducts(franchise);
+        product = franchise.getBranches().get(0).getProducts().get(0);
+
+        FranchiseRepository repository = Stubs.of(FranchiseRepository.class, Map.of(
+                "findFranchise", args -> Mono.just(franchise),
+                "findFranchises", args -> Flux.just(franchise),
+                "existsFranchise", args -> Mono.just(true)));
+        ProductStore store = Stubs.of(ProductStore.class, Map.of(
+                "findTopProductsByBranch", args -> Flux.fromIterable(top),
+                "setStock", args -> Mono.just(product),
+                "incrementStock", args -> Mono.just(product),
+                "addProduct", args -> Mono.just((Product) args[2]),
+                "withProducts", args -> Mono.just((Franchise) args[0]),
+                "bulkUpdateStock", args -> Mono.just(write((List<?>) args[0]))));
+
+        FranchiseProperties properties = new FranchiseProperties();
+        FranchiseCache cache = new FranchiseCache(repository, properties);
+        franchiseService = new FranchiseService(repository, store, properties, cache,
+                new StockEventBroadcaster(properties), new ObjectIdGenerator());
+        stockBulkService = new StockBulkService(repository, store, properties, cache);
+
+        bulkItems = new ArrayList<>(BULK_ITEMS);
+        rejectedBulkItems = new ArrayList<>(BULK_ITEMS);
+        for (int i = 0; i < BULK_ITEMS; i++) {
+            String branchId = Fixtures.branchId(i % branches);
+            String productId = Fixtures.productId(i % branches, (i / branches) % PRODUCTS_PER_BRANCH);
+            bulkItems.add(BulkStockUpdateItem.builder()
+                    .franchiseId(franchise.getId()).branchId(branchId).productId(productId)
+                    .stock(i % 2 == 0 ? i : null).delta(i % 2 == 0 ? null : 1)
+                    .build());
+            rejectedBulkItems.add(BulkStockUpdateItem.builder()
+                    .franchiseId(franchise.getId()).branchId(branchId).productId(productId)
+                    .delta(-1_000)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public List<TopProductResponse> topProductsByBranch() {
+        return franchiseService.getTopProductsByBranch("franchise-0", 1).collectList().block();
+    }
+
+    @Benchmark
+    public Product setProductStock() {
+        return franchiseService.setProductStock("franchise-0", Fixtures.branchId(0), product.getId(),
+                UpdateStockRequest.builder().stock(5).build()).block();
+    }
+
+    @Benchmark
+    public Product adjustProductStock() {
+        return franchiseService.adjustProductStock("franchise-0", Fixtures.branchId(0), product.getId(),
+                AdjustStockRequest.builder().delta(-1).build()).block();
+    }
+
+    @Benchmark
+    public Product addProduct() {
+        return franchiseService.addProduct("franchise-0", Fixtures.branchId(0),
+                CreateProductRequest.builder().name("New product").stock(5).build()).block();
+    }
+
+    /**
+     * The full-representation write: the stock change, then the franchise reloaded through
+     * the cache it just invalidated.
+     */
+    @Benchmark
+    public Franchise updateProductStock() {
+        return franchiseService.updateProductStock("franchise-0", Fixtures.branchId(0), product.getId(),
+                UpdateStockRequest.builder().stock(5).build()).block();
+    }
+
+    @Benchmark
+    public List<BulkStockUpdateResult> bulkUpdateStock() {
+        return stockBulkService.bulkUpdateStock(Flux.fromIterable(bulkItems)).collectList().block();
+    }
+
+    /**
+     * Every item is an unmatched decrement, so the franchise is read back and each item is
+     * classified as a conflict.
+     */
+    @Benchmark
+    public List<BulkStockUpdateResult> bulkUpdateStockRejected() {
+        return stockBulkService.bulkUpdateStock(Flux.fromIterable(rejectedBulkItems)).collectList().block();
+    }
+
+    private static BulkStockWrite write(List<?> items) {
+        List<Outcome> outcomes = new ArrayList<>(items.size());
+        for (Object item : items) {
+            Integer delta = ((BulkStockUpdateItem) item).getDelta();
+            outcomes.add(delta != null && delta < 0 ? Outcome.UNMATCHED : Outcome.APPLIED);
+        }
+        return new BulkStockWrite(outcomes);
+    }
+}
@@ -0,0 +1,17 @@
+package com.franchise.api.loadtest;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Ids of the seeded products; requests pick a random one to fill in their path.
+ */
+record Dataset(List<Entry> entries) {
+
+    record Entry(String franchiseId, String branchId, String productId) {
+    }
+
+    Entry pick(SplittableRandom random) {
+        return entries.get(random.nextInt(entries.size()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.franchise.api.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and status counts per request template.
+ */
+final class LatencyReport {
+
+    // Microsecond resolution up to one minute, 3 significant digits.
+    private static final long MAX_LATENCY_MICROS = 60_000_000L;
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    void record(String name, int status, long nanos) {
+        Endpoint endpoint = endpoints.computeIfAbsent(name, key -> new Endpoint());
+        endpoint.latency.recordValue(Math.min(nanos / 1_000, MAX_LATENCY_MICROS));
+        if (status < 200 || status >= 400) {
+            endpoint.errors.increment();
+        }
+        endpoint.statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+    }
+
+    void print(PrintStream out, Duration elapsed) {
+        out.printf("%n%-90s %8s %9s %9s %9s %9s %9s %7s%n",
+                "endpoint", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "errors");
+        new TreeMap<>(endpoints).forEach((name, endpoint) -> {
+            Histogram h = endpoint.latency;
+            out.printf("%-90s %8d %9.1f %9.2f %9.2f %9.2f %9.2f %7d%n", name, h.getTotalCount(),
+                    h.getTotalCount() / seconds(elapsed), millis(h.getValueAtPercentile(50)),
+                    millis(h.getValueAtPercentile(90)), millis(h.getValueAtPercentile(99)),
+                    millis(h.getMaxValue()), endpoint.errors.sum());
+        });
+        out.printf("%nTotal: %d requests in %.1f s (%.1f req/s)%n", total(), seconds(elapsed), total() / seconds(elapsed));
+    }
+
+    String toJson(Duration elapsed, LoadTestSettings settings) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("settings", settings);
+        json.putAll(toMap(elapsed));
+        return write(json);
+    }
+
+    /**
+     * Totals and per-endpoint results, without the settings.
+     */
+    Map<String, Object> toMap(Duration elapsed) {
+        Map<String, Object> endpointResults = new TreeMap<>();
+        endpoints.forEach((name, endpoint) -> {
+            Histogram h = endpoint.latency;
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", h.getTotalCount());
+            result.put("throughput", h.getTotalCount() / seconds(elapsed));
+            result.put("errors", endpoint.errors.sum());
+            result.put("statuses", new TreeMap<>(endpoint.statuses));
+            Map<String, Double> percentiles = new LinkedHashMap<>();
+            for (double p : new double[]{50, 90, 99, 99.9}) {
+                percentiles.put("p" + p, millis(h.getValueAtPercentile(p)));
+            }
+            percentiles.put("max", millis(h.getMaxValue()));
+            result.put("latencyMillis", percentiles);
+            endpointResults.put(name, result);
+        });
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("elapsedSeconds", seconds(elapsed));
+        json.put("requests", total());
+        json.put("throughput", total() / seconds(elapsed));
+        json.put("endpoints", endpointResults);
+        return json;
+    }
+
+    static String write(Map<String, Object> json) {
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(json);
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long total() {
+        return endpoints.values().stream().mapToLong(endpoint -> endpoint.latency.getTotalCount()).sum();
+    }
+
+    private static double seconds(Duration elapsed) {
+        return elapsed.toNanos() / 1e9;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+
+    private static final class Endpoint {
+        private final Histogram latency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,211 @@
+package com.franchise.api.loadtest;
+
+import com.franchise.api.FranchiseApiApplication;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.model.ProductDocument;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.mongo.transitions.Mongod;
+import de.flapdoodle.embed.mongo.transitions.RunningMongodProcess;
+import de.flapdoodle.reverse.TransitionWalker;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * End-to-end load test: starts the application against an embedded MongoDB (or the one in
+ * {@code loadtest.mongo-uri}), seeds a dataset, replays a workload through WebClient and
+ * writes per-endpoint latency percentiles and throughput. Run it with {@code gradle loadTest}.
+ * With {@code loadtest.sweep} it instead reseeds once per listed franchise count and measures
+ * the report queries, to show how their latency grows with the collection.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+        TransitionWalker.ReachedState<RunningMongodProcess> mongod = null;
+        String mongoUri = settings.mongoUri();
+        if (mongoUri == null) {
+            mongod = Mongod.instance().start(Version.Main.V7_0);
+            mongoUri = "mongodb://" + mongod.current().getServerAddress() + "/franchise_loadtest";
+        }
+
+        try (ConfigurableApplicationContext context = SpringApplication.run(FranchiseApiApplication.class,
+                "--spring.data.mongodb.uri=" + mongoUri,
+                "--server.port=0",
+                "--logging.level.com.franchise.api=INFO",
+                "--logging.level.org.springframework.data.mongodb=INFO")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            WebClient client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port)
+                    .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                    .build();
+
+            if (!settings.sweep().isEmpty()) {
+                sweep(context, client, settings);
+                return;
+            }
+
+            Dataset dataset = seed(context, settings, settings.franchises());
+            Workload workload = settings.replay() != null
+                    ? Workload.replay(Files.readAllLines(Path.of(settings.replay())))
+                    : Workload.generatedMix();
+
+            System.out.printf("Warming up with %d requests%n", settings.warmupRequests());
+            run(client, workload, dataset, settings, settings.warmupRequests(), new LatencyReport());
+
+            LatencyReport report = new LatencyReport();
+            System.out.printf("Running %d requests, concurrency %d, rate %s%n", settings.requests(),
+                    settings.concurrency(), settings.rate() > 0 ? settings.rate() + "/s" : "unthrottled");
+            long start = System.nanoTime();
+            run(client, workload, dataset, settings, settings.requests(), report);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            report.print(System.out, elapsed);
+            write(settings, report.toJson(elapsed, settings));
+        } finally {
+            if (mongod != null) {
+                mongod.close();
+            }
+        }
+    }
+
+    /**
+     * Reseeds with each franchise count of the sweep and runs the report workload against it,
+     * writing one result per collection size.
+     */
+    private static void sweep(ConfigurableApplicationContext context, WebClient client, LoadTestSettings settings)
+            throws IOException {
+        Workload workload = Workload.sizeSweep();
+        List<Map<String, Object>> sizes = new ArrayList<>();
+        for (int franchises : settings.sweep()) {
+            Dataset dataset = seed(context, settings, franchises);
+            run(client, workload, dataset, settings, settings.sweepRequests() / 10, new LatencyReport());
+
+            LatencyReport report = new LatencyReport();
+            System.out.printf("Running %d requests, concurrency %d%n", settings.sweepRequests(), settings.concurrency());
+            long start = System.nanoTime();
+            run(client, workload, dataset, settings, settings.sweepRequests(), report);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            report.print(System.out, elapsed);
+
+            Map<String, Object> size = new LinkedHashMap<>();
+            size.put("franchises", franchises);
+            size.put("products", dataset.entries().size());
+            size.putAll(report.toMap(elapsed));
+            sizes.add(size);
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("settings", settings);
+        json.put("sizes", sizes);
+        write(settings, LatencyReport.write(json));
+    }
+
+    private static void write(LoadTestSettings settings, String json) throws IOException {
+        Path output = Path.of(settings.output());
+        Files.createDirectories(output.getParent());
+        Files.writeString(output, json);
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private static void run(WebClient client, Workload workload, Dataset dataset, LoadTestSettings settings,
+                            int requests, LatencyReport report) {
+        SplittableRandom random = new SplittableRandom(settings.seed());
+        Flux<Integer> ticks = Flux.range(0, requests);
+        if (settings.rate() > 0) {
+            ticks = ticks.delayElements(Duration.ofNanos(1_000_000_000L / settings.rate()));
+        }
+        ticks.map(i -> workload.next(i, dataset, random.split()))
+                .flatMap(request -> execute(client, request, report), settings.concurrency())
+                .blockLast();
+    }
+
+    private static Mono<Void> execute(WebClient client, Workload.Request request, LatencyReport report) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            WebClient.RequestBodySpec spec = client.method(request.method()).uri(request.uri());
+            WebClient.RequestHeadersSpec<?> ready = request.body() != null
+                    ? spec.header("Content-Type", "application/json").bodyValue(request.body())
+                    : spec;
+            return ready.exchangeToMono(response -> response.releaseBody()
+                            .thenReturn(response.statusCode().value()))
+                    .onErrorReturn(-1)
+                    .doOnNext(status -> report.record(request.name(), status, System.nanoTime() - start))
+                    .then();
+        });
+    }
+
+    /**
+     * Inserts the dataset directly, in the storage layout the application runs with.
+     */
+    private static Dataset seed(ConfigurableApplicationContext context, LoadTestSettings settings, int franchises) {
+        ReactiveMongoTemplate mongoTemplate = context.getBean(ReactiveMongoTemplate.class);
+        boolean normalized = "normalized".equals(context.getBean(FranchiseProperties.class).getStorage().getLayout());
+        SplittableRandom random = new SplittableRandom(settings.seed());
+
+        mongoTemplate.dropCollection(Franchise.class)
+                .then(mongoTemplate.dropCollection(ProductDocument.class))
+                .block();
+
+        List<Dataset.Entry> entries = new ArrayList<>();
+        for (int f = 0; f < franchises; f++) {
+            List<Branch> branches = new ArrayList<>(settings.branches());
+            List<ProductDocument> documents = new ArrayList<>();
+            String franchiseId = UUID.randomUUID().toString();
+            for (int b = 0; b < settings.branches(); b++) {
+                String branchId = UUID.randomUUID().toString();
+                List<Product> products = new ArrayList<>(settings.products());
+                for (int p = 0; p < settings.products(); p++) {
+                    Product product = Product.builder()
+                            .id(UUID.randomUUID().toString())
+                            .name("Product " + p)
+                            .stock(100 + random.nextInt(900))
+                            .build();
+                    products.add(product);
+                    documents.add(ProductDocument.of(franchiseId, branchId, product));
+                    entries.add(new Dataset.Entry(franchiseId, branchId, product.getId()));
+                }
+                branches.add(Branch.builder()
+                        .id(branchId)
+                        .name("Branch " + b)
+                        .products(normalized ? new ArrayList<>() : products)
+                        .build());
+            }
+            Franchise franchise = Franchise.builder()
+                    .id(franchiseId)
+                    .name("Franchise " + f)
+                    .branches(branches)
+                    .build();
+            mongoTemplate.insert(franchise)
+                    .then(normalized ? mongoTemplate.insertAll(documents).then() : Mono.empty())
+                    .block();
+        }
+
+        System.out.printf("Seeded %d franchises, %d branches each, %d products per branch (%s layout)%n",
+                franchises, settings.branches(), settings.products(), normalized ? "normalized" : "embedded");
+        return new Dataset(entries);
+    }
+}
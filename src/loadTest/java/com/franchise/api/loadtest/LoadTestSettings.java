@@ -0,0 +1,47 @@
+package com.franchise.api.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Load test parameters, read from {@code loadtest.*} system properties ({@code gradle loadTest}
+ * forwards them from {@code -Ploadtest.*}). {@code sweep} lists franchise counts to reseed
+ * with, one run of {@code sweepRequests} report requests per count; it is empty unless
+ * {@code loadtest.sweep} is set.
+ */
+record LoadTestSettings(
+        String mongoUri,
+        String replay,
+        String output,
+        int franchises,
+        int branches,
+        int products,
+        int requests,
+        int warmupRequests,
+        int concurrency,
+        int rate,
+        long seed,
+        List<Integer> sweep,
+        int sweepRequests) {
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                System.getProperty("loadtest.mongo-uri"),
+                System.getProperty("loadtest.replay"),
+                System.getProperty("loadtest.output", "build/results/loadtest/results.json"),
+                Integer.getInteger("loadtest.franchises", 50),
+                Integer.getInteger("loadtest.branches", 20),
+                Integer.getInteger("loadtest.products", 50),
+                Integer.getInteger("loadtest.requests", 50_000),
+                Integer.getInteger("loadtest.warmup-requests", 5_000),
+                Integer.getInteger("loadtest.concurrency", 64),
+                Integer.getInteger("loadtest.rate", 0),
+                Long.getLong("loadtest.seed", 42L),
+                Arrays.stream(System.getProperty("loadtest.sweep", "").split(","))
+                        .map(String::trim)
+                        .filter(size -> !size.isEmpty())
+                        .map(Integer::valueOf)
+                        .toList(),
+                Integer.getInteger("loadtest.sweep-requests", 1_000));
+    }
+}
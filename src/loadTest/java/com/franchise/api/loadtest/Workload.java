@@ -0,0 +1,119 @@
+package com.franchise.api.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpMethod;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The requests sent by the load test. Paths and bodies are templates whose placeholders
+ * ({@code {franchiseId}}, {@code {branchId}}, {@code {productId}}, {@code {stock}},
+ * {@code {delta}}) are filled with a random seeded product for every request, so latencies
+ * are reported per template rather than per concrete URL.
+ */
+final class Workload {
+
+    private static final String PRODUCT = "/api/franchises/{franchiseId}/branches/{branchId}/products/{productId}";
+
+    private final List<Template> templates;
+    private final boolean weighted;
+    private final int totalWeight;
+
+    private Workload(List<Template> templates, boolean weighted) {
+        this.templates = templates;
+        this.weighted = weighted;
+        this.totalWeight = templates.stream().mapToInt(Template::weight).sum();
+    }
+
+    /**
+     * A read-heavy mix of the public endpoints, picked at random by weight.
+     */
+    static Workload generatedMix() {
+        return new Workload(List.of(
+                new Template(HttpMethod.GET, "/api/franchises/{franchiseId}", null, 40),
+                new Template(HttpMethod.GET, "/api/franchises/{franchiseId}/top-products", null, 15),
+                new Template(HttpMethod.PUT, PRODUCT + "/stock", "{\"stock\":{stock}}", 20),
+                new Template(HttpMethod.POST, PRODUCT + "/stock:adjust", "{\"delta\":{delta}}", 15),
+                new Template(HttpMethod.GET, "/api/franchises?limit=50", null, 5),
+                new Template(HttpMethod.GET, "/api/reports/top-products?limit=10", null, 5)), true);
+    }
+
+    /**
+     * The queries measured against collection size: the cross-franchise reports, whose
+     * aggregations scan the whole collection, and the per-franchise top products for
+     * comparison. The threshold catches the lowest ~5% of the seeded stocks (100 to 999).
+     */
+    static Workload sizeSweep() {
+        return new Workload(List.of(
+                new Template(HttpMethod.GET, "/api/franchises/{franchiseId}/top-products", null, 1),
+                new Template(HttpMethod.GET, "/api/reports/top-products?limit=10", null, 1),
+                new Template(HttpMethod.GET, "/api/reports/low-stock?threshold=150", null, 1)), true);
+    }
+
+    /**
+     * Replays JSON lines of the form {@code {"method":"GET","path":"...","body":{...}}} in
+     * order, starting over when the end is reached.
+     */
+    static Workload replay(List<String> lines) {
+        ObjectMapper mapper = new ObjectMapper();
+        List<Template> templates = lines.stream()
+                .filter(line -> !line.isBlank())
+                .map(line -> {
+                    try {
+                        JsonNode node = mapper.readTree(line);
+                        JsonNode body = node.get("body");
+                        return new Template(HttpMethod.valueOf(node.get("method").asText()), node.get("path").asText(),
+                                body == null || body.isNull() ? null : mapper.writeValueAsString(body), 1);
+                    } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+                        throw new UncheckedIOException("Invalid replay line: " + line, e);
+                    }
+                })
+                .toList();
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("The replay file has no requests");
+        }
+        return new Workload(templates, false);
+    }
+
+    Request next(int sequence, Dataset dataset, SplittableRandom random) {
+        Template template = weighted ? pick(random) : templates.get(sequence % templates.size());
+        Dataset.Entry entry = dataset.pick(random);
+        String body = template.body() == null ? null : fill(template.body(), entry, random);
+        return new Request(template.name(), template.method(), fill(template.path(), entry, random), body);
+    }
+
+    private Template pick(SplittableRandom random) {
+        int target = random.nextInt(totalWeight);
+        for (Template template : templates) {
+            target -= template.weight();
+            if (target < 0) {
+                return template;
+            }
+        }
+        return templates.get(templates.size() - 1);
+    }
+
+    private static String fill(String template, Dataset.Entry entry, SplittableRandom random) {
+        return template
+                .replace("{franchiseId}", entry.franchiseId())
+                .replace("{branchId}", entry.branchId())
+                .replace("{productId}", entry.productId())
+                .replace("\"{stock}\"", "{stock}")
+                .replace("{stock}", Integer.toString(100 + random.nextInt(900)))
+                .replace("\"{delta}\"", "{delta}")
+                .replace("{delta}", random.nextBoolean() ? "1" : "-1");
+    }
+
+    record Template(HttpMethod method, String path, String body, int weight) {
+
+        String name() {
+            return method.name() + " " + path;
+        }
+    }
+
+    record Request(String name, HttpMethod method, String uri, String body) {
+    }
+}
@@ -0,0 +1,85 @@
+package com.franchise.api.cache;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.repository.FranchiseRepository;
+import com.franchise.api.sharding.ShardKey;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Read-through cache of franchise documents keyed by id, bounded by the total number of
+ * branches and products it holds rather than by the number of franchises.
+ * <p>
+ * Concurrent misses for the same id share a single load, and writers keep the cache coherent
+ * by putting the new document or invalidating the entry. Loads are narrowed to the region of
+ * the requesting caller, and a cached franchise is only served within its own region. Hit, miss
+ * and eviction statistics are published as {@code cache.*} metrics under the name "franchises".
+ */
+@Component
+public class FranchiseCache implements MeterBinder {
+
+    private final AsyncLoadingCache<String, Franchise> cache;
+
+    private final FranchiseRepository franchiseRepository;
+
+    public FranchiseCache(FranchiseRepository franchiseRepository, FranchiseProperties properties) {
+        FranchiseProperties.Cache config = properties.getCache();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(config.getMaximumWeight())
+                .weigher((String id, Franchise franchise) -> weigh(franchise))
+                .expireAfterWrite(config.getExpireAfterWrite())
+                .recordStats()
+                .buildAsync((id, executor) -> franchiseRepository.findFranchise(id).toFuture());
+        this.franchiseRepository = franchiseRepository;
+    }
+
+    /**
+     * Completes empty when the franchise does not exist. Cancelling the returned {@code Mono}
+     * does not cancel a load other subscribers may be waiting on.
+     */
+    public Mono<Franchise> get(String id) {
+        return ShardKey.inShard(region -> Mono.fromFuture(() -> cache.get(id, (key, executor) -> franchiseRepository
+                        .findFranchise(key)
+                        .contextWrite(ShardKey.of(region))
+                        .toFuture()), true)
+                .filter(franchise -> ShardKey.contains(region, franchise)));
+    }
+
+    public void put(Franchise franchise) {
+        cache.put(franchise.getId(), CompletableFuture.completedFuture(franchise));
+    }
+
+    public void invalidate(String id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Grows with the size of the document: one for the franchise, plus one per branch and
+     * per embedded product.
+     */
+    static int weigh(Franchise franchise) {
+        long weight = 1;
+        for (Branch branch : franchise.getBranches()) {
+            weight += 1 + branch.getProducts().size();
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "franchises");
+    }
+}
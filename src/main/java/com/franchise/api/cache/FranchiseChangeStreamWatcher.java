@@ -0,0 +1,201 @@
+package com.franchise.api.cache;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.event.StockEventBroadcaster;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.repository.FranchiseRepositoryCustom;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps the {@link FranchiseCache} of every replica coherent with writes made by the others,
+ * and feeds the {@link StockEventBroadcaster}.
+ * <p>
+ * A single change stream on the franchises collection evicts the cached copy of each changed
+ * document and republishes stock changes to live subscribers. Full documents are stripped from
+ * the stream, so only the small update descriptions travel. The resume token is persisted per replica, which lets a restarted replica continue
+ * where it stopped. Change streams need a replica set, so this is opt-in through
+ * {@code franchise.cache.change-stream.enabled}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "franchise.cache.change-stream", name = "enabled", havingValue = "true")
+public class FranchiseChangeStreamWatcher {
+
+    // Raised when the oplog no longer holds the position of a stored resume token.
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+
+    private static final Pattern STOCK_PATH = Pattern.compile("branches\\.\\d+\\.products\\.\\d+\\.stock");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FranchiseCache franchiseCache;
+    private final StockEventBroadcaster stockEventBroadcaster;
+    private final FranchiseProperties properties;
+
+    private Disposable subscription;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        FranchiseProperties.ChangeStream config = properties.getCache().getChangeStream();
+        subscription = Flux.defer(this::watch)
+                .doOnNext(this::evict)
+                .doOnNext(this::publishStockChange)
+                .map(ChangeStreamEvent::getResumeToken)
+                .sample(config.getTokenFlushInterval())
+                .concatMap(this::saveToken)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(signal -> log.warn("Franchise change stream failed, reconnecting",
+                                signal.failure())))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private Flux<ChangeStreamEvent<Document>> watch() {
+        // Anything may have changed while the stream was down, so start from an empty cache.
+        franchiseCache.invalidateAll();
+        return loadToken()
+                .map(token -> options().resumeAfter(token))
+                .defaultIfEmpty(options())
+                .flatMapMany(options -> mongoTemplate.changeStream(
+                        mongoTemplate.getCollectionName(Franchise.class), options.build(), Document.class))
+                .onErrorResume(FranchiseChangeStreamWatcher::isHistoryLost,
+                        error -> deleteToken().then(Mono.error(error)));
+    }
+
+    private ChangeStreamOptions.ChangeStreamOptionsBuilder options() {
+        return ChangeStreamOptions.builder()
+                .filter(new Document("$match", new Document("operationType",
+                                new Document("$in", List.of("update", "replace", "delete")))),
+                        new Document("$project", new Document("fullDocument", 0)));
+    }
+
+    private void evict(ChangeStreamEvent<Document> event) {
+        String franchiseId = franchiseId(event);
+        if (franchiseId != null) {
+            franchiseCache.invalidate(franchiseId);
+        }
+    }
+
+    private void publishStockChange(ChangeStreamEvent<Document> event) {
+        ChangeStreamDocument<Document> raw = event.getRaw();
+        if (raw == null || raw.getUpdateDescription() == null || raw.getUpdateDescription().getUpdatedFields() == null) {
+            return;
+        }
+        BsonDocument updatedFields = raw.getUpdateDescription().getUpdatedFields();
+        BsonValue change = updatedFields.get(FranchiseRepositoryCustom.LAST_STOCK_CHANGE);
+        if (change == null) {
+            return;
+        }
+
+        // Coalesced writes record every change of the batch, each with its resulting stock.
+        List<BsonValue> changes = change.isArray() ? change.asArray().getValues() : List.of(change);
+        for (BsonValue value : changes) {
+            if (!value.isDocument()) {
+                continue;
+            }
+            BsonDocument stockChange = value.asDocument();
+            Integer stock = stockChange.isNumber("stock")
+                    ? Integer.valueOf(stockChange.getNumber("stock").intValue())
+                    : incrementedStock(updatedFields);
+            stockEventBroadcaster.publish(StockEvent.builder()
+                    .franchiseId(franchiseId(event))
+                    .branchId(stockChange.getString("branchId").getValue())
+                    .productId(stockChange.getString("productId").getValue())
+                    .stock(stock)
+                    .type(StockEvent.Type.valueOf(stockChange.getString("type").getValue()))
+                    .build());
+        }
+    }
+
+    /**
+     * The new value of an {@code $inc}-ed stock, read from its positional path in the update description.
+     */
+    private static Integer incrementedStock(BsonDocument updatedFields) {
+        return updatedFields.entrySet().stream()
+                .filter(field -> STOCK_PATH.matcher(field.getKey()).matches() && field.getValue().isNumber())
+                .map(field -> field.getValue().asNumber().intValue())
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String franchiseId(ChangeStreamEvent<Document> event) {
+        if (event.getRaw() == null || event.getRaw().getDocumentKey() == null) {
+            return null;
+        }
+        BsonValue id = event.getRaw().getDocumentKey().get("_id");
+        if (id == null) {
+            return null;
+        }
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private Mono<BsonValue> loadToken() {
+        FranchiseProperties.ChangeStream config = properties.getCache().getChangeStream();
+        return mongoTemplate.findById(config.getConsumerId(), Document.class, config.getTokenCollection())
+                .mapNotNull(document -> document.get("token", Document.class))
+                .map(token -> token.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry()));
+    }
+
+    private Mono<Void> saveToken(BsonValue token) {
+        FranchiseProperties.ChangeStream config = properties.getCache().getChangeStream();
+        return mongoTemplate.upsert(
+                        query(where("_id").is(config.getConsumerId())),
+                        new Update().set("token", token).set("updatedAt", Instant.now()),
+                        config.getTokenCollection())
+                .then();
+    }
+
+    private Mono<Void> deleteToken() {
+        FranchiseProperties.ChangeStream config = properties.getCache().getChangeStream();
+        log.warn("Resume token of '{}' is no longer in the oplog, restarting the change stream from now",
+                config.getConsumerId());
+        return mongoTemplate.remove(query(where("_id").is(config.getConsumerId())), config.getTokenCollection())
+                .then();
+    }
+
+    private static boolean isHistoryLost(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException commandError
+                    && commandError.getErrorCode() == CHANGE_STREAM_HISTORY_LOST) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.franchise.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.accept.RequestedContentTypeResolverBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Adds {@code application/cbor} next to JSON, for JVM consumers that do not need a
+ * human-readable payload. The mapper shares the JSON configuration, so both carry the
+ * same fields.
+ */
+@Configuration
+public class CodecConfig implements WebFluxConfigurer {
+
+    @Bean
+    public CodecCustomizer cborCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper mapper = builder.factory(new CBORFactory()).build();
+        return configurer -> {
+            configurer.customCodecs().register(new CborEncoder(mapper));
+            configurer.customCodecs().register(new Jackson2CborDecoder(mapper, MediaType.APPLICATION_CBOR));
+        };
+    }
+
+    /**
+     * Keeps JSON the default. Without a specific Accept header every codec is acceptable,
+     * and custom codecs are consulted before the built-in JSON one.
+     */
+    @Override
+    public void configureContentTypeResolver(RequestedContentTypeResolverBuilder builder) {
+        builder.headerResolver();
+        builder.fixedResolver(MediaType.APPLICATION_JSON, MediaType.ALL);
+    }
+
+    /**
+     * Spring's CBOR encoder only encodes single values, which rules out every handler
+     * returning a publisher. Single values are encoded as they are; a {@link Flux} is written
+     * as a CBOR array of indefinite length, each element encoded as it arrives, so an
+     * unbounded stream is never held in memory and clients still read one array.
+     */
+    static final class CborEncoder extends Jackson2CborEncoder {
+
+        // Major type 4 (array) with indefinite length, and the "break" code that closes it.
+        private static final byte ARRAY_START = (byte) 0x9F;
+        private static final byte ARRAY_END = (byte) 0xFF;
+
+        CborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(Publisher<?> input, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                       MimeType mimeType, Map<String, Object> hints) {
+            if (input instanceof Mono<?> value) {
+                return value.map(element -> encodeValue(element, bufferFactory, elementType, mimeType, hints)).flux();
+            }
+            return Flux.concat(
+                    Mono.fromCallable(() -> bufferFactory.wrap(new byte[]{ARRAY_START})),
+                    Flux.from(input).map(element -> encodeValue(element, bufferFactory, elementType, mimeType, hints)),
+                    Mono.fromCallable(() -> bufferFactory.wrap(new byte[]{ARRAY_END})));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.franchise.api.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "franchise")
+public class FranchiseProperties {
+
+    private final Bulk bulk = new Bulk();
+
+    private final Batch batch = new Batch();
+
+    private final Pagination pagination = new Pagination();
+
+    private final Cache cache = new Cache();
+
+    private final StockEvents stockEvents = new StockEvents();
+
+    private final Storage storage = new Storage();
+
+    private final WriteRetry writeRetry = new WriteRetry();
+
+    private final WriteCoalescing writeCoalescing = new WriteCoalescing();
+
+    private final Ids ids = new Ids();
+
+    private final Sharding sharding = new Sharding();
+
+    private final RateLimit rateLimit = new RateLimit();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    @Data
+    public static class Bulk {
+
+        /** Maximum number of stock updates sent to MongoDB in a single bulk write. */
+        private int batchSize = 1000;
+
+        /** Number of bulk writes allowed in flight at the same time. */
+        private int concurrency = 2;
+    }
+
+    @Data
+    public static class Batch {
+
+        /** Most franchises, branches and products a single transactional batch may create or rename. */
+        private int maxOperations = 1000;
+    }
+
+    @Data
+    public static class Pagination {
+
+        /** Page size used when a cursor is given without an explicit limit. */
+        private int defaultLimit = 100;
+
+        /** Largest page a client may request. */
+        private int maxLimit = 1000;
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * Memory budget of the cache, in weight units: each cached franchise weighs one plus
+         * one per branch and per embedded product, so a few large franchises cannot crowd
+         * out memory the way a plain entry count would let them.
+         */
+        private long maximumWeight = 500_000;
+
+        /** How long a cached franchise is served before it is reloaded. */
+        private Duration expireAfterWrite = Duration.ofMinutes(10);
+
+        private final ChangeStream changeStream = new ChangeStream();
+    }
+
+    @Data
+    public static class ChangeStream {
+
+        /**
+         * Evict cached franchises written by other replicas and publish live stock events.
+         * Requires a replica set.
+         */
+        private boolean enabled = false;
+
+        /** Identifies this replica's resume token; must be unique per replica. */
+        private String consumerId = "franchise-api";
+
+        /** Collection where resume tokens are stored. */
+        private String tokenCollection = "change_stream_tokens";
+
+        /** How often the latest resume token is persisted. */
+        private Duration tokenFlushInterval = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class StockEvents {
+
+        /** Events buffered per live subscriber before the oldest ones are dropped. */
+        private int subscriberBufferSize = 256;
+    }
+
+    @Data
+    public static class Storage {
+
+        /** Where products are kept: "embedded" in the franchise document or "normalized" into their own collection. */
+        private String layout = "embedded";
+
+        /** Copy embedded products into the products collection at startup (normalized layout only). */
+        private boolean migrateOnStartup = false;
+
+        /** Products upserted per bulk write while migrating. */
+        private int migrationBatchSize = 500;
+    }
+
+    @Data
+    public static class Ids {
+
+        /** How new branch and product ids are minted: "object-id" (time-ordered, compact) or "uuid". */
+        private String strategy = "object-id";
+    }
+
+    @Data
+    public static class Sharding {
+
+        /** Scope every franchise query to the region of the request, the leading field of the shard key {region, _id}. */
+        private boolean enabled = false;
+
+        /** Request header carrying the region. */
+        private String header = "X-Region";
+
+        /** Region of requests without the header; also given to franchises they create. */
+        private String defaultRegion = "default";
+    }
+
+    @Data
+    public static class RateLimit {
+
+        /** Throttle the /api requests of each tenant with a token bucket and a cap on concurrent requests. */
+        private boolean enabled = false;
+
+        /** Request header identifying the tenant; requests without it are keyed by client address. */
+        private String header = "X-Tenant-Id";
+
+        /** Quota of tenants without an entry in {@code tenants}. */
+        private final Quota defaults = new Quota();
+
+        /** Quotas of specific tenants, keyed by tenant id; unset fields take the {@link Quota} defaults, not {@code defaults}. */
+        private Map<String, Quota> tenants = new HashMap<>();
+
+        /** Tenants whose limiter state is kept in memory; idle ones are dropped first. */
+        private long maxTenants = 100_000;
+
+        /** Tag the limiter metrics with the tenant id; tenants without an entry in {@code tenants} share the tag "other". */
+        private boolean tenantTags = false;
+    }
+
+    @Data
+    public static class Idempotency {
+
+        /** How long the response to a request with an Idempotency-Key is replayed to retries. */
+        private Duration ttl = Duration.ofHours(24);
+
+        /** After this long a request still running under a key is presumed lost and may be run again. */
+        private Duration lockTimeout = Duration.ofMinutes(1);
+
+        /** Completed keys kept in memory in front of the idempotency_keys collection. */
+        private long maximumSize = 10_000;
+    }
+
+    @Data
+    public static class Quota {
+
+        /** Sustained requests per second. */
+        private double rate = 50;
+
+        /** Requests accepted at once after an idle period: the size of the token bucket. */
+        private int burst = 100;
+
+        /** Requests of the tenant processed at the same time. */
+        private int maxInFlight = 32;
+    }
+
+    @Data
+    public static class WriteRetry {
+
+        /** Retries of a read-modify-write after a version conflict before giving up. */
+        private int maxAttempts = 5;
+
+        /** Backoff before the first retry; it doubles on each attempt, with jitter. */
+        private Duration minBackoff = Duration.ofMillis(10);
+
+        /** Upper bound of the backoff between retries. */
+        private Duration maxBackoff = Duration.ofMillis(200);
+    }
+
+    @Data
+    public static class WriteCoalescing {
+
+        /** Merge concurrent product writes to the same franchise into one update (embedded layout only). */
+        private boolean enabled = false;
+
+        /** How long writes to a franchise are collected before they are applied together. */
+        private Duration window = Duration.ofMillis(5);
+
+        /** Most writes applied in one update; the rest wait for the next one. */
+        private int maxBatchSize = 256;
+    }
+}
@@ -0,0 +1,19 @@
+package com.franchise.api.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+
+/**
+ * Transaction manager behind the {@code TransactionalOperator} used by batch writes.
+ * MongoDB only runs multi-document transactions on a replica set or sharded cluster.
+ */
+@Configuration
+public class MongoTransactionConfig {
+
+    @Bean
+    public ReactiveMongoTransactionManager transactionManager(ReactiveMongoDatabaseFactory databaseFactory) {
+        return new ReactiveMongoTransactionManager(databaseFactory);
+    }
+}
@@ -1,25 +1,54 @@
 package com.franchise.api.controller;
 
 import com.franchise.api.dto.RequestDTOs.*;
+import com.franchise.api.dto.BulkStockUpdateResult;
+import com.franchise.api.dto.StockEvent;
 import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.idempotency.IdempotentRequests;
+import com.franchise.api.model.Branch;
 import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.service.BatchService;
 import com.franchise.api.service.FranchiseService;
+import com.franchise.api.service.StockBulkService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/api/franchises")
 @RequiredArgsConstructor
 @Tag(name = "Franchise Management", description = "API to manage franchises, branches and products")
 public class FranchiseController {
 
+    private static final Duration STOCK_EVENTS_HEARTBEAT = Duration.ofSeconds(15);
+
+    private static final String PREFER = "Prefer";
+    private static final String RETURN_MINIMAL = "return=minimal";
+    private static final String MINIMAL_RESPONSE = "Returns the whole franchise. With 'Prefer: return=minimal' only the "
+            + "changed franchise summary, branch or product is returned.";
+    private static final String IDEMPOTENT = " Retries with the same Idempotency-Key get the first response back "
+            + "instead of creating a duplicate.";
+
     private final FranchiseService franchiseService;
+    private final StockBulkService stockBulkService;
+    private final BatchService batchService;
+    private final IdempotentRequests idempotentRequests;
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
@@ -28,87 +57,260 @@ public class FranchiseController {
         return franchiseService.createFranchise(request);
     }
 
-    @GetMapping
-    @Operation(summary = "Get all franchises")
-    public Flux<Franchise> getAllFranchises() {
-        return franchiseService.getAllFranchises();
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Get all franchises",
+            description = "Supports keyset pagination (after = last id of the previous page, limit) and a "
+                    + "comma-separated fields projection, e.g. fields=name,branches.id. "
+                    + "Request application/x-ndjson to stream the results.")
+    public Flux<Franchise> getAllFranchises(
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) List<String> fields) {
+        return franchiseService.getFranchises(after, limit, fields);
     }
 
     @GetMapping("/{franchiseId}")
-    @Operation(summary = "Get a franchise by ID")
-    public Mono<Franchise> getFranchiseById(@PathVariable String franchiseId) {
-        return franchiseService.getFranchiseById(franchiseId);
+    @Operation(summary = "Get a franchise by ID",
+            description = "Carries a strong ETag from the franchise version. A matching If-None-Match is answered "
+                    + "with 304 after a version-only read, without loading the franchise.")
+    public Mono<Franchise> getFranchiseById(@PathVariable String franchiseId, ServerWebExchange exchange) {
+        if (exchange.getRequest().getHeaders().getIfNoneMatch().isEmpty()) {
+            return franchiseService.getFranchiseById(franchiseId)
+                    .doOnNext(franchise -> exchange.getResponse().getHeaders().setETag(versionTag(franchise.getVersion())));
+        }
+        return franchiseService.getFranchiseVersion(franchiseId)
+                .flatMap(version -> exchange.checkNotModified(versionTag(version))
+                        ? Mono.empty()
+                        : franchiseService.getFranchiseById(franchiseId, version)
+                                // A write may have landed since the version was read; tag what is sent.
+                                .doOnNext(franchise -> exchange.getResponse().getHeaders()
+                                        .setETag(versionTag(franchise.getVersion()))));
+    }
+
+    @GetMapping("/by-branch/{branchId}")
+    @Operation(summary = "Get the franchise a branch belongs to")
+    public Mono<Franchise> getFranchiseByBranch(@PathVariable String branchId) {
+        return franchiseService.getFranchiseByBranch(branchId);
+    }
+
+    @GetMapping("/by-product/{productId}")
+    @Operation(summary = "Get the franchise a product belongs to")
+    public Mono<Franchise> getFranchiseByProduct(@PathVariable String productId) {
+        return franchiseService.getFranchiseByProduct(productId);
     }
 
     @PutMapping("/{franchiseId}/name")
-    @Operation(summary = "Update a franchise name")
-    public Mono<Franchise> updateFranchiseName(
+    @Operation(summary = "Update a franchise name", description = MINIMAL_RESPONSE)
+    public Mono<?> updateFranchiseName(
             @PathVariable String franchiseId,
-            @Valid @RequestBody UpdateNameRequest request) {
-        return franchiseService.updateFranchiseName(franchiseId, request);
+            @Valid @RequestBody UpdateNameRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            ServerHttpResponse response) {
+        return prefersMinimal(prefer, response)
+                ? franchiseService.renameFranchise(franchiseId, request)
+                : franchiseService.updateFranchiseName(franchiseId, request);
     }
 
     @PostMapping("/{franchiseId}/branches")
     @ResponseStatus(HttpStatus.CREATED)
-    @Operation(summary = "Add a new branch to the franchise")
-    public Mono<Franchise> addBranchToFranchise(
+    @Operation(summary = "Add a new branch to the franchise", description = MINIMAL_RESPONSE + IDEMPOTENT)
+    public Mono<?> addBranchToFranchise(
             @PathVariable String franchiseId,
-            @Valid @RequestBody CreateBranchRequest request) {
-        return franchiseService.addBranchToFranchise(franchiseId, request);
+            @Valid @RequestBody CreateBranchRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            ServerHttpResponse response) {
+        Mono<Branch> branch = idempotent(idempotencyKey, "POST /" + franchiseId + "/branches " + request,
+                () -> franchiseService.addBranch(franchiseId, request));
+        return prefersMinimal(prefer, response)
+                ? branch
+                : branch.then(franchiseService.getFranchiseById(franchiseId));
     }
 
     @PutMapping("/{franchiseId}/branches/{branchId}/name")
-    @Operation(summary = "Update a branch name")
-    public Mono<Franchise> updateBranchName(
+    @Operation(summary = "Update a branch name", description = MINIMAL_RESPONSE)
+    public Mono<?> updateBranchName(
             @PathVariable String franchiseId,
             @PathVariable String branchId,
-            @Valid @RequestBody UpdateNameRequest request) {
-        return franchiseService.updateBranchName(franchiseId, branchId, request);
+            @Valid @RequestBody UpdateNameRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            ServerHttpResponse response) {
+        return prefersMinimal(prefer, response)
+                ? franchiseService.renameBranch(franchiseId, branchId, request)
+                : franchiseService.updateBranchName(franchiseId, branchId, request);
     }
 
     @PostMapping("/{franchiseId}/branches/{branchId}/products")
     @ResponseStatus(HttpStatus.CREATED)
-    @Operation(summary = "Add a new product to a branch")
-    public Mono<Franchise> addProductToBranch(
+    @Operation(summary = "Add a new product to a branch", description = MINIMAL_RESPONSE + IDEMPOTENT)
+    public Mono<?> addProductToBranch(
             @PathVariable String franchiseId,
             @PathVariable String branchId,
-            @Valid @RequestBody CreateProductRequest request) {
-        return franchiseService.addProductToBranch(franchiseId, branchId, request);
+            @Valid @RequestBody CreateProductRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            @RequestHeader(value = IdempotentRequests.HEADER, required = false) String idempotencyKey,
+            ServerHttpResponse response) {
+        Mono<Product> product = idempotent(idempotencyKey,
+                "POST /" + franchiseId + "/branches/" + branchId + "/products " + request,
+                () -> franchiseService.addProduct(franchiseId, branchId, request));
+        return prefersMinimal(prefer, response)
+                ? product
+                : product.then(franchiseService.getFranchiseById(franchiseId));
     }
 
     @DeleteMapping("/{franchiseId}/branches/{branchId}/products/{productId}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(summary = "Delete a product from a branch")
-    public Mono<Franchise> deleteProductFromBranch(
+    public Mono<Void> deleteProductFromBranch(
             @PathVariable String franchiseId,
             @PathVariable String branchId,
             @PathVariable String productId) {
-        return franchiseService.deleteProductFromBranch(franchiseId, branchId, productId);
+        // A 204 carries no body, so there is no representation to build.
+        return franchiseService.removeProduct(franchiseId, branchId, productId).then();
     }
 
     @PutMapping("/{franchiseId}/branches/{branchId}/products/{productId}/stock")
-    @Operation(summary = "Update the stock of a product")
-    public Mono<Franchise> updateProductStock(
+    @Operation(summary = "Update the stock of a product", description = MINIMAL_RESPONSE)
+    public Mono<?> updateProductStock(
             @PathVariable String franchiseId,
             @PathVariable String branchId,
             @PathVariable String productId,
-            @Valid @RequestBody UpdateStockRequest request) {
-        return franchiseService.updateProductStock(franchiseId, branchId, productId, request);
+            @Valid @RequestBody UpdateStockRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            ServerHttpResponse response) {
+        return prefersMinimal(prefer, response)
+                ? franchiseService.setProductStock(franchiseId, branchId, productId, request)
+                : franchiseService.updateProductStock(franchiseId, branchId, productId, request);
+    }
+
+    @PostMapping("/{franchiseId}/branches/{branchId}/products/{productId}/stock:adjust")
+    @Operation(summary = "Atomically increment or decrement the stock of a product",
+            description = "Applies a relative delta in a single database update. Returns 409 when the stock would become negative.")
+    public Mono<Product> adjustProductStock(
+            @PathVariable String franchiseId,
+            @PathVariable String branchId,
+            @PathVariable String productId,
+            @Valid @RequestBody AdjustStockRequest request) {
+        return franchiseService.adjustProductStock(franchiseId, branchId, productId, request);
+    }
+
+    @PostMapping("/batch")
+    @Operation(summary = "Create and rename franchises, branches and products in one transaction",
+            description = "Nodes with an id are existing entities, renamed when a name is given; nodes without one "
+                    + "are created with everything below them. Either every change is applied or none is. "
+                    + "Requires MongoDB running as a replica set.")
+    public Flux<Franchise> applyBatch(@Valid @RequestBody BatchRequest request) {
+        return batchService.applyBatch(request);
+    }
+
+    @PostMapping(value = "/stock:bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Apply many stock changes in batched bulk writes",
+            description = "Accepts a JSON array or NDJSON stream of {franchiseId, branchId, productId, stock|delta} "
+                    + "and returns one result per item, in input order.")
+    public Flux<BulkStockUpdateResult> bulkUpdateStock(@RequestBody Flux<BulkStockUpdateItem> items) {
+        return stockBulkService.bulkUpdateStock(items);
     }
 
     @PutMapping("/{franchiseId}/branches/{branchId}/products/{productId}/name")
-    @Operation(summary = "Update a product name")
-    public Mono<Franchise> updateProductName(
+    @Operation(summary = "Update a product name", description = MINIMAL_RESPONSE)
+    public Mono<?> updateProductName(
             @PathVariable String franchiseId,
             @PathVariable String branchId,
             @PathVariable String productId,
-            @Valid @RequestBody UpdateNameRequest request) {
-        return franchiseService.updateProductName(franchiseId, branchId, productId, request);
+            @Valid @RequestBody UpdateNameRequest request,
+            @RequestHeader(value = PREFER, required = false) String prefer,
+            ServerHttpResponse response) {
+        return prefersMinimal(prefer, response)
+                ? franchiseService.renameProduct(franchiseId, branchId, productId, request)
+                : franchiseService.updateProductName(franchiseId, branchId, productId, request);
+    }
+
+    @GetMapping(value = "/{franchiseId}/stock-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Subscribe to live stock changes of a franchise",
+            description = "Server-sent events with {branchId, productId, stock} for every added, updated or removed "
+                    + "product, optionally narrowed to one branch. Requires franchise.cache.change-stream.enabled.")
+    public Flux<ServerSentEvent<StockEvent>> streamStockEvents(
+            @PathVariable String franchiseId,
+            @RequestParam(required = false) String branchId) {
+        Flux<ServerSentEvent<StockEvent>> events = franchiseService.streamStockEvents(franchiseId, branchId)
+                .map(event -> ServerSentEvent.builder(event)
+                        .event(event.getType().name())
+                        .build());
+        // Keeps idle connections from being closed by proxies between the dashboards and the API.
+        Flux<ServerSentEvent<StockEvent>> heartbeats = Flux.interval(STOCK_EVENTS_HEARTBEAT)
+                .map(tick -> ServerSentEvent.<StockEvent>builder()
+                        .comment("heartbeat")
+                        .build());
+        return Flux.merge(events, heartbeats);
     }
 
     @GetMapping("/{franchiseId}/top-products")
-    @Operation(summary = "Obtain the product with the largest stock for each branch of a franchise")
-    public Flux<TopProductResponse> getTopProductsByBranch(@PathVariable String franchiseId) {
-        return franchiseService.getTopProductsByBranch(franchiseId);
+    @Operation(summary = "Obtain the products with the largest stock for each branch of a franchise",
+            description = "Returns the top 'limit' products per branch (1 by default). Carries a weak ETag from "
+                    + "the franchise version and answers a matching If-None-Match with 304.")
+    public Flux<TopProductResponse> getTopProductsByBranch(
+            @PathVariable String franchiseId,
+            @RequestParam(defaultValue = "1") int limit,
+            ServerWebExchange exchange) {
+        if (exchange.getRequest().getHeaders().getIfNoneMatch().isEmpty()) {
+            return topProducts(franchiseId, limit, exchange);
+        }
+        return franchiseService.getFranchiseVersion(franchiseId)
+                .flatMapMany(version -> exchange.checkNotModified(topProductsTag(version))
+                        ? Flux.empty()
+                        : topProducts(franchiseId, limit, exchange));
+    }
+
+    /**
+     * Every row carries the version it was read at, so the ETag comes with the result and the
+     * version is only read up front to answer If-None-Match. An empty result is not tagged.
+     */
+    private Flux<TopProductResponse> topProducts(String franchiseId, int limit, ServerWebExchange exchange) {
+        return franchiseService.getTopProductsByBranch(franchiseId, limit)
+                .switchOnFirst((first, rows) -> {
+                    if (first.hasValue()) {
+                        exchange.getResponse().getHeaders().setETag(topProductsTag(first.get().getFranchiseVersion()));
+                    }
+                    return rows;
+                });
+    }
+
+    /**
+     * Weak: products with the same stock may come back in a different order.
+     */
+    private static String topProductsTag(Long version) {
+        return "W/" + versionTag(version);
+    }
+
+    /**
+     * Every write bumps the franchise version, so it changes exactly when the franchise does.
+     */
+    private static String versionTag(Long version) {
+        return "\"" + (version != null ? version : 0L) + "\"";
+    }
+
+    /**
+     * Runs a creation at most once per {@code Idempotency-Key}. Only the created entity is kept
+     * for replay; the full representation is read from the franchise afterwards.
+     */
+    private <T> Mono<T> idempotent(String idempotencyKey, String request, Supplier<Mono<T>> action) {
+        return idempotencyKey != null ? idempotentRequests.execute(idempotencyKey, request, action) : action.get();
+    }
+
+    /**
+     * Whether the client asked for only the changed entity (RFC 7240). The choice is echoed
+     * in Preference-Applied, and Vary keeps shared caches from mixing the two shapes.
+     */
+    private static boolean prefersMinimal(String prefer, ServerHttpResponse response) {
+        response.getHeaders().add(HttpHeaders.VARY, PREFER);
+        boolean minimal = prefer != null && Arrays.stream(prefer.split(","))
+                .map(preference -> preference.split(";", 2)[0].trim())
+                .anyMatch(RETURN_MINIMAL::equalsIgnoreCase);
+        if (minimal) {
+            response.getHeaders().add("Preference-Applied", RETURN_MINIMAL);
+        }
+        return minimal;
     }
 }
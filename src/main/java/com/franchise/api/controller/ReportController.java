@@ -0,0 +1,35 @@
+package com.franchise.api.controller;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.service.ReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+@RestController
+@RequestMapping(value = "/api/reports", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+@RequiredArgsConstructor
+@Tag(name = "Reports", description = "Stock reports across all franchises")
+public class ReportController {
+
+    private final ReportService reportService;
+
+    @GetMapping("/top-products")
+    @Operation(summary = "Obtain the products with the largest stock across all franchises")
+    public Flux<ProductStockReport> getTopProducts(@RequestParam(defaultValue = "10") int limit) {
+        return reportService.getTopProducts(limit);
+    }
+
+    @GetMapping("/low-stock")
+    @Operation(summary = "Obtain every branch with products whose stock is below the threshold")
+    public Flux<LowStockBranchReport> getLowStockBranches(@RequestParam int threshold) {
+        return reportService.getLowStockBranches(threshold);
+    }
+}
@@ -0,0 +1,29 @@
+package com.franchise.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkStockUpdateResult {
+    private long index;
+    private String franchiseId;
+    private String branchId;
+    private String productId;
+    private Status status;
+    private String message;
+
+    public enum Status {
+        APPLIED,
+        NOT_FOUND,
+        CONFLICT,
+        INVALID,
+        FAILED
+    }
+}
@@ -0,0 +1,15 @@
+package com.franchise.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FranchiseSummary {
+    private String id;
+    private String name;
+}
@@ -0,0 +1,24 @@
+package com.franchise.api.dto;
+
+import com.franchise.api.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LowStockBranchReport {
+    private String franchiseId;
+    private String franchiseName;
+    private String branchId;
+    private String branchName;
+
+    @Builder.Default
+    private List<Product> products = new ArrayList<>();
+}
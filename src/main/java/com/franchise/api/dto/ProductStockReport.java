@@ -0,0 +1,20 @@
+package com.franchise.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStockReport {
+    private String franchiseId;
+    private String franchiseName;
+    private String branchId;
+    private String branchName;
+    private String productId;
+    private String productName;
+    private Integer stock;
+}
@@ -1,13 +1,17 @@
 package com.franchise.api.dto;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 public class RequestDTOs {
 
     @Data
@@ -51,6 +55,31 @@ public class RequestDTOs {
         private Integer stock;
     }
 
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AdjustStockRequest {
+        @NotNull(message = "Delta is required")
+        private Integer delta;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BulkStockUpdateItem {
+        private String franchiseId;
+        private String branchId;
+        private String productId;
+
+        /** Absolute stock to set. Mutually exclusive with {@code delta}. */
+        private Integer stock;
+
+        /** Relative change applied atomically. Mutually exclusive with {@code stock}. */
+        private Integer delta;
+    }
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -59,4 +88,56 @@ public class RequestDTOs {
         @NotBlank(message = "The name is required")
         private String name;
     }
+
+    /**
+     * Structural changes applied in one transaction. Every node with an id refers to an
+     * existing entity, renamed when a name is given; a node without one is created together
+     * with everything below it.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchRequest {
+        @NotEmpty(message = "At least one franchise is required")
+        @Valid
+        private List<BatchFranchise> franchises;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchFranchise {
+        private String id;
+        private String name;
+
+        @Valid
+        private List<BatchBranch> branches;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchBranch {
+        private String id;
+        private String name;
+
+        @Valid
+        private List<BatchProduct> products;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchProduct {
+        private String id;
+        private String name;
+
+        /** Only used when the product is created. */
+        @Min(value = 0, message = "Stock cannot be negative")
+        private Integer stock;
+    }
 }
@@ -0,0 +1,26 @@
+package com.franchise.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StockEvent {
+    private String franchiseId;
+    private String branchId;
+    private String productId;
+    private Integer stock;
+    private Type type;
+
+    public enum Type {
+        ADDED,
+        UPDATED,
+        REMOVED
+    }
+}
@@ -1,5 +1,6 @@
 package com.franchise.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,4 +16,8 @@ public class TopProductResponse {
     private Integer stock;
     private String branchId;
     private String branchName;
+
+    /** Version of the franchise the row was read from; only used to tag the response. */
+    @JsonIgnore
+    private Long franchiseVersion;
 }
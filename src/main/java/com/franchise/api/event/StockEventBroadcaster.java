@@ -0,0 +1,47 @@
+package com.franchise.api.event;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.StockEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Fans stock changes out to every live subscriber from one shared source.
+ * <p>
+ * Events are pushed once into a multicast sink; each subscriber gets its own bounded buffer
+ * that drops the oldest events when that client falls behind, so a slow dashboard never
+ * holds back the others or the change stream feeding the sink.
+ */
+@Slf4j
+@Component
+public class StockEventBroadcaster {
+
+    private final Sinks.Many<StockEvent> sink = Sinks.many().multicast().directBestEffort();
+    private final int subscriberBufferSize;
+
+    public StockEventBroadcaster(FranchiseProperties properties) {
+        this.subscriberBufferSize = properties.getStockEvents().getSubscriberBufferSize();
+    }
+
+    public void publish(StockEvent event) {
+        Sinks.EmitResult result = sink.tryEmitNext(event);
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            log.debug("Stock event for franchise {} was not emitted: {}", event.getFranchiseId(), result);
+        }
+    }
+
+    /**
+     * Live stock changes of a franchise, optionally narrowed to one branch.
+     */
+    public Flux<StockEvent> subscribe(String franchiseId, String branchId) {
+        return sink.asFlux()
+                .filter(event -> franchiseId.equals(event.getFranchiseId()))
+                .filter(event -> branchId == null || branchId.equals(event.getBranchId()))
+                .onBackpressureBuffer(subscriberBufferSize,
+                        dropped -> log.debug("Dropped stock event for slow subscriber: {}", dropped),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,13 @@
+package com.franchise.api.id;
+
+/**
+ * Mints the ids of new branches and products, selected with {@code franchise.ids.strategy}.
+ * <p>
+ * {@link ObjectIdGenerator} (the default) mints time-ordered ObjectIds, stored as 12-byte BSON
+ * ObjectIds; {@link UuidGenerator} keeps the former random UUID strings. Ids of either kind
+ * are accepted everywhere, whatever the current strategy.
+ */
+public interface IdGenerator {
+
+    String nextId();
+}
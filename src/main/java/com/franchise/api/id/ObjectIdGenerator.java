@@ -0,0 +1,20 @@
+package com.franchise.api.id;
+
+import org.bson.types.ObjectId;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timestamp, per-process random value and counter: ids sort by creation time, and minting
+ * one never touches an entropy source. The mapping layer stores the hex form as a native
+ * ObjectId.
+ */
+@Component
+@ConditionalOnProperty(prefix = "franchise.ids", name = "strategy", havingValue = "object-id", matchIfMissing = true)
+public class ObjectIdGenerator implements IdGenerator {
+
+    @Override
+    public String nextId() {
+        return new ObjectId().toHexString();
+    }
+}
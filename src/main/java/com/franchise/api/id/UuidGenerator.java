@@ -0,0 +1,19 @@
+package com.franchise.api.id;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Random 36-character UUID strings, as ids were minted before ObjectIds.
+ */
+@Component
+@ConditionalOnProperty(prefix = "franchise.ids", name = "strategy", havingValue = "uuid")
+public class UuidGenerator implements IdGenerator {
+
+    @Override
+    public String nextId() {
+        return UUID.randomUUID().toString();
+    }
+}
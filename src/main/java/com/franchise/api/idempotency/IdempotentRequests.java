@@ -0,0 +1,171 @@
+package com.franchise.api.idempotency;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.exception.IdempotencyConflictException;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.model.IdempotencyRecord;
+import com.franchise.api.model.IdempotencyRecord.Status;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Runs a request made with an {@code Idempotency-Key} at most once and answers retries with
+ * the response of the first run.
+ * <p>
+ * The key is claimed by inserting a {@link IdempotencyRecord} into the TTL-indexed
+ * {@code idempotency_keys} collection, whose unique {@code _id} lets only one replica run the
+ * request; the others wait for it to complete. Within a replica, duplicates arriving while the
+ * request runs share that run, and completed records are served from a bounded in-memory cache
+ * without a round trip. A failed request releases its key so it can be retried.
+ * <p>
+ * Results are held in memory and in a document, so actions should return the created entity
+ * rather than a whole franchise.
+ */
+@Slf4j
+@Component
+public class IdempotentRequests {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    static final Index TTL = new Index()
+            .on("expiresAt", Sort.Direction.ASC)
+            .expire(0, TimeUnit.SECONDS)
+            .named("expires_at");
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FranchiseProperties.Idempotency config;
+    private final AsyncCache<String, IdempotencyRecord> completed;
+
+    public IdempotentRequests(ReactiveMongoTemplate mongoTemplate, FranchiseProperties properties) {
+        this.mongoTemplate = mongoTemplate;
+        this.config = properties.getIdempotency();
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(config.getTtl())
+                .buildAsync();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(IdempotencyRecord.class).ensureIndex(TTL)
+                .doOnError(e -> log.error("Could not create the TTL index of the idempotency_keys collection", e))
+                .subscribe();
+    }
+
+    /**
+     * Runs {@code action} unless {@code key} was already used, in which case the stored
+     * response is returned. {@code request} describes the request (method, path, body); a key
+     * reused for a different one is refused.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, String request, Supplier<? extends Mono<? extends T>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return Mono.error(new InvalidRequestException(
+                    HEADER + " must have between 1 and " + MAX_KEY_LENGTH + " characters"));
+        }
+        // The run is shared, so a caller going away must not cancel it for the others.
+        return Mono.deferContextual(context -> Mono.fromFuture(() -> completed.get(key, (id, executor) ->
+                        claim(id, request, action)
+                                .contextWrite(context)
+                                .toFuture()), true))
+                .flatMap(record -> {
+                    if (!record.getRequest().equals(request)) {
+                        return Mono.error(new InvalidRequestException(
+                                HEADER + " " + key + " was already used for a different request"));
+                    }
+                    return Mono.justOrEmpty((T) record.getResponse());
+                });
+    }
+
+    private Mono<IdempotencyRecord> claim(String key, String request, Supplier<? extends Mono<?>> action) {
+        IdempotencyRecord claimed = IdempotencyRecord.builder()
+                .id(key)
+                .request(request)
+                .status(Status.RUNNING)
+                .expiresAt(Instant.now().plus(config.getLockTimeout()))
+                .build();
+        return mongoTemplate.insert(claimed)
+                .flatMap(record -> run(record, action))
+                .onErrorResume(DuplicateKeyException.class, e -> existing(key, request, action));
+    }
+
+    /**
+     * Another run claimed the key first. A completed record is replayed, one for a different
+     * request is refused by the caller, and a running one is polled until it completes. A claim
+     * past its lock timeout (or a record past its TTL, not yet deleted) is removed and claimed
+     * again.
+     */
+    private Mono<IdempotencyRecord> existing(String key, String request, Supplier<? extends Mono<?>> action) {
+        Duration poll = config.getLockTimeout().dividedBy(20);
+        return mongoTemplate.findById(key, IdempotencyRecord.class)
+                .flatMap(record -> {
+                    if (record.getExpiresAt().isBefore(Instant.now())) {
+                        return mongoTemplate.remove(query(where("_id").is(key).and("expiresAt").is(record.getExpiresAt())),
+                                        IdempotencyRecord.class)
+                                .then(claim(key, request, action));
+                    }
+                    if (record.getStatus() == Status.RUNNING && record.getRequest().equals(request)) {
+                        return Mono.error(new IdempotencyConflictException(
+                                "A request with " + HEADER + " " + key + " is still in progress"));
+                    }
+                    return Mono.just(record);
+                })
+                .switchIfEmpty(Mono.defer(() -> claim(key, request, action)))
+                .retryWhen(Retry.backoff(10, Duration.ofMillis(20))
+                        .maxBackoff(poll.isZero() ? Duration.ofMillis(20) : poll)
+                        .filter(IdempotencyConflictException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Stores the response for replay. Should storing it fail, the response is still returned
+     * and the key released, so a retry runs the request again rather than waiting on it.
+     */
+    private Mono<IdempotencyRecord> run(IdempotencyRecord claimed, Supplier<? extends Mono<?>> action) {
+        return action.get()
+                .cast(Object.class)
+                .onErrorResume(error -> release(claimed).then(Mono.error(error)))
+                .switchIfEmpty(Mono.defer(() -> release(claimed).then(Mono.empty())))
+                .flatMap(response -> {
+                    IdempotencyRecord record = IdempotencyRecord.builder()
+                            .id(claimed.getId())
+                            .request(claimed.getRequest())
+                            .status(Status.COMPLETED)
+                            .response(response)
+                            .expiresAt(Instant.now().plus(config.getTtl()))
+                            .build();
+                    return mongoTemplate.save(record)
+                            .onErrorResume(error -> {
+                                log.warn("Could not store the response for {} {}", HEADER, claimed.getId(), error);
+                                return release(claimed).thenReturn(record);
+                            });
+                });
+    }
+
+    private Mono<Void> release(IdempotencyRecord claimed) {
+        return mongoTemplate.remove(query(where("_id").is(claimed.getId()).and("status").is(Status.RUNNING)),
+                        IdempotencyRecord.class)
+                .onErrorResume(error -> Mono.empty())
+                .then();
+    }
+}
@@ -0,0 +1,61 @@
+package com.franchise.api.metrics;
+
+import com.franchise.api.model.Franchise;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Size distribution of franchise documents as BSON bytes ({@code franchise.document.size}),
+ * recorded when a whole document is saved and when one is read back. Atomic updates do not
+ * go through the mapping events, so the read side is what tracks growth over time.
+ */
+@Component
+public class FranchiseDocumentMetrics extends AbstractMongoEventListener<Franchise> {
+
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    // MongoDB's 16 MB document limit.
+    private static final double MAX_DOCUMENT_SIZE = 16 * 1024 * 1024;
+
+    private final DistributionSummary saved;
+    private final DistributionSummary loaded;
+
+    public FranchiseDocumentMetrics(MeterRegistry registry) {
+        this.saved = summary(registry, "save");
+        this.loaded = summary(registry, "load");
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Franchise> event) {
+        record(saved, event.getDocument());
+    }
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Franchise> event) {
+        record(loaded, event.getDocument());
+    }
+
+    private static void record(DistributionSummary summary, Document document) {
+        if (document != null) {
+            summary.record(new RawBsonDocument(document, CODEC).getByteBuffer().remaining());
+        }
+    }
+
+    private static DistributionSummary summary(MeterRegistry registry, String operation) {
+        return DistributionSummary.builder("franchise.document.size")
+                .description("Size of franchise documents in BSON bytes")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(64.0)
+                .maximumExpectedValue(MAX_DOCUMENT_SIZE)
+                .register(registry);
+    }
+}
@@ -0,0 +1,74 @@
+package com.franchise.api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.search.Search;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.Scannable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Publishes {@code executor.*} metrics for the executors backing Reactor's schedulers
+ * (parallel, boundedElastic, ...), tagged with the scheduler name. Each executor is named
+ * after its scheduler and the lowest free slot, like {@code boundedElastic-3}; its meters
+ * are removed and its slot reused once it shuts down, so schedulers that keep replacing
+ * idle workers do not grow the number of series. Only executors created after the
+ * registry is bound are instrumented.
+ */
+@Component
+public class SchedulerMetrics implements MeterBinder, DisposableBean {
+
+    private static final String DECORATOR_KEY = "franchise-api.metrics";
+
+    private static final String PREFIX = "reactor";
+
+    private final Map<String, BitSet> slots = new HashMap<>();
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Schedulers.addExecutorServiceDecorator(DECORATOR_KEY, (scheduler, executor) -> {
+            String name = Scannable.from(scheduler).scanOrDefault(Scannable.Attr.NAME, scheduler.getClass().getSimpleName());
+            // Reactor names schedulers like "parallel(8,\"parallel\")"; keep the part before the arguments.
+            int arguments = name.indexOf('(');
+            String schedulerName = arguments > 0 ? name.substring(0, arguments) : name;
+            int slot = acquire(schedulerName);
+            String executorName = schedulerName + "-" + slot;
+
+            ScheduledExecutorService monitored = ExecutorServiceMetrics.monitor(registry, executor, executorName, PREFIX,
+                    Tags.of(Tag.of("reactor.scheduler", schedulerName)));
+            return new ShutdownAwareExecutor(monitored, () -> {
+                Search.in(registry)
+                        .name(meter -> meter.startsWith(PREFIX + ".executor"))
+                        .tag("name", executorName)
+                        .meters()
+                        .forEach(registry::remove);
+                release(schedulerName, slot);
+            });
+        });
+    }
+
+    @Override
+    public void destroy() {
+        Schedulers.removeExecutorServiceDecorator(DECORATOR_KEY);
+    }
+
+    private synchronized int acquire(String scheduler) {
+        BitSet used = slots.computeIfAbsent(scheduler, key -> new BitSet());
+        int slot = used.nextClearBit(0);
+        used.set(slot);
+        return slot;
+    }
+
+    private synchronized void release(String scheduler, int slot) {
+        slots.get(scheduler).clear(slot);
+    }
+}
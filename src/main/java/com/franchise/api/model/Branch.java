@@ -1,13 +1,18 @@
 package com.franchise.api.model;
 
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.annotation.Transient;
 
 import jakarta.validation.constraints.NotBlank;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Data
 @Builder
@@ -22,4 +27,16 @@ public class Branch {
     
     @Builder.Default
     private List<Product> products = new ArrayList<>();
+
+    @Transient
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final transient IdIndex<Product> productIndex = new IdIndex<>(Product::getId);
+
+    /**
+     * Finds a product by id in constant time instead of scanning {@link #products}.
+     */
+    public Optional<Product> findProduct(String id) {
+        return productIndex.find(products, id);
+    }
 }
@@ -1,15 +1,22 @@
 package com.franchise.api.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import jakarta.validation.constraints.NotBlank;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Data
 @Builder
@@ -23,7 +30,33 @@ public class Franchise {
     
     @NotBlank(message = "The franchise name is required")
     private String name;
+
+    /**
+     * Leading field of the shard key {@code {region: 1, _id: 1}}; set when the franchise is
+     * created and never changed, since MongoDB would have to move the document between shards.
+     */
+    private String region;
+
+    /**
+     * Revision of the document, incremented by every write. Saves of a stale copy fail with
+     * an {@code OptimisticLockingFailureException} instead of overwriting newer changes.
+     */
+    @Version
+    @JsonIgnore
+    private Long version;
     
     @Builder.Default
     private List<Branch> branches = new ArrayList<>();
+
+    @Transient
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final transient IdIndex<Branch> branchIndex = new IdIndex<>(Branch::getId);
+
+    /**
+     * Finds a branch by id in constant time instead of scanning {@link #branches}.
+     */
+    public Optional<Branch> findBranch(String id) {
+        return branchIndex.find(branches, id);
+    }
 }
@@ -0,0 +1,68 @@
+package com.franchise.api.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Lazily built id lookup over one of the lists of a document. It is never persisted or
+ * serialized. It maps each id to a position in the list, and a hit is only trusted while the
+ * list still holds the same entity, with the same id, at that position. When the list was
+ * replaced, resized or edited in place, or the id is missing, the index is rebuilt and the
+ * lookup repeated, so a miss costs as much as a scan.
+ * <p>
+ * Safe to share between threads: each build is published as an immutable snapshot.
+ */
+final class IdIndex<T> {
+
+    private final Function<T, String> idOf;
+
+    private volatile Snapshot<T> snapshot;
+
+    IdIndex(Function<T, String> idOf) {
+        this.idOf = idOf;
+    }
+
+    Optional<T> find(List<T> items, String id) {
+        if (items == null || id == null) {
+            return Optional.empty();
+        }
+
+        Snapshot<T> current = snapshot;
+        if (current != null && current.items == items && current.size == items.size()) {
+            T item = current.lookup(items, id, idOf);
+            if (item != null) {
+                return Optional.of(item);
+            }
+        }
+
+        current = new Snapshot<>(items, items.size(), index(items));
+        snapshot = current;
+        return Optional.ofNullable(current.lookup(items, id, idOf));
+    }
+
+    private Map<String, Integer> index(List<T> items) {
+        Map<String, Integer> positions = new HashMap<>(Math.max(16, items.size() * 4 / 3 + 1));
+        for (int i = 0; i < items.size(); i++) {
+            String id = idOf.apply(items.get(i));
+            if (id != null) {
+                positions.putIfAbsent(id, i);
+            }
+        }
+        return positions;
+    }
+
+    private record Snapshot<T>(List<T> items, int size, Map<String, Integer> positions) {
+
+        T lookup(List<T> items, String id, Function<T, String> idOf) {
+            Integer position = positions.get(id);
+            if (position == null || position >= items.size()) {
+                return null;
+            }
+            T item = items.get(position);
+            return item != null && id.equals(idOf.apply(item)) ? item : null;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.franchise.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * A request made with an {@code Idempotency-Key}: claimed while it runs, then holding the
+ * response to replay. MongoDB deletes it once {@code expiresAt} has passed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+    public enum Status { RUNNING, COMPLETED }
+
+    @Id
+    private String id;
+
+    /** Method, path and body of the request, so a key reused for another request is refused. */
+    private String request;
+
+    private Status status;
+
+    /** The response body, stored with its type so it is read back as the same class. */
+    private Object response;
+
+    private Instant expiresAt;
+}
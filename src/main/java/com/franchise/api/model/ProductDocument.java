@@ -0,0 +1,55 @@
+package com.franchise.api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.IndexDirection;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A product stored on its own, used by the normalized storage layout instead of the
+ * products embedded in {@link Branch}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "products")
+@CompoundIndex(name = "franchise_branch", def = "{'franchiseId': 1, 'branchId': 1}")
+@CompoundIndex(name = "branch_stock", def = "{'branchId': 1, 'stock': -1}")
+public class ProductDocument {
+
+    @Id
+    private String id;
+
+    private String franchiseId;
+
+    private String branchId;
+
+    private String name;
+
+    @Indexed(name = "stock", direction = IndexDirection.DESCENDING)
+    private Integer stock;
+
+    public static ProductDocument of(String franchiseId, String branchId, Product product) {
+        return ProductDocument.builder()
+                .id(product.getId())
+                .franchiseId(franchiseId)
+                .branchId(branchId)
+                .name(product.getName())
+                .stock(product.getStock())
+                .build();
+    }
+
+    public Product toProduct() {
+        return Product.builder()
+                .id(id)
+                .name(name)
+                .stock(stock)
+                .build();
+    }
+}
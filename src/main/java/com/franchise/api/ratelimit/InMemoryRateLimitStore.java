@@ -0,0 +1,66 @@
+package com.franchise.api.ratelimit;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets kept as a single number per tenant: the time at which the bucket will be
+ * full again (the generic cell rate algorithm). Taking a token moves that time one interval
+ * forward with a compare-and-set, so concurrent requests never block each other.
+ * <p>
+ * Tenants idle for a minute are dropped; their bucket is full by then unless the burst is
+ * larger than a minute of requests.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    private static final Duration IDLE = Duration.ofMinutes(1);
+
+    private final Cache<String, AtomicLong> buckets;
+    private final LongSupplier nanoClock;
+
+    public InMemoryRateLimitStore(long maxTenants) {
+        this(maxTenants, System::nanoTime);
+    }
+
+    InMemoryRateLimitStore(long maxTenants, LongSupplier nanoClock) {
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxTenants)
+                .expireAfterAccess(IDLE)
+                .build();
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public Mono<Duration> tryAcquire(String tenant, FranchiseProperties.Quota quota) {
+        return Mono.fromSupplier(() -> Duration.ofNanos(acquire(tenant, quota)));
+    }
+
+    /**
+     * Returns zero when a token was taken, otherwise the nanoseconds until one is available.
+     */
+    long acquire(String tenant, FranchiseProperties.Quota quota) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / quota.getRate());
+        long capacity = interval * quota.getBurst();
+        AtomicLong fullAt = buckets.get(tenant, key -> new AtomicLong(nanoClock.getAsLong()));
+
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+            long wait = next - now - capacity;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
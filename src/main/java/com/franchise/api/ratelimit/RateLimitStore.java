@@ -0,0 +1,20 @@
+package com.franchise.api.ratelimit;
+
+import com.franchise.api.config.FranchiseProperties;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Holds the token bucket of each tenant. Without a bean of this type every instance keeps
+ * its buckets in memory, so each one grants the full quota; an implementation backed by a
+ * shared store enforces it across instances.
+ */
+public interface RateLimitStore {
+
+    /**
+     * Takes a token from the bucket of the tenant. Completes with {@link Duration#ZERO} when
+     * the request may go ahead, otherwise with the time until a token becomes available.
+     */
+    Mono<Duration> tryAcquire(String tenant, FranchiseProperties.Quota quota);
+}
@@ -0,0 +1,216 @@
+package com.franchise.api.ratelimit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.franchise.api.config.FranchiseProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a tenant from starving the others: each tenant, named by {@code franchise.rate-limit.header}
+ * or else by client address, gets a token bucket for its request rate and a cap on the
+ * requests it has in flight. A request over either limit is answered with 429 and a
+ * {@code Retry-After} header without reaching the handlers. Event streams are only
+ * rate limited, since each holds its request open.
+ * <p>
+ * Runs after the HTTP server observation, so rejected requests still show up in
+ * {@code http.server.requests}.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@ConditionalOnProperty(prefix = "franchise.rate-limit", name = "enabled", havingValue = "true")
+public class TenantRateLimitFilter implements WebFilter {
+
+    static final String METRIC = "franchise.rate.limit.requests";
+
+    private static final PathPattern STOCK_EVENTS = PathPatternParser.defaultInstance
+            .parse("/api/franchises/{franchiseId}/stock-events");
+
+    private final FranchiseProperties.RateLimit config;
+    private final RateLimitStore store;
+    private final MeterRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, AtomicInteger> inFlight;
+    private final Map<Outcome, Counter> counters = new HashMap<>();
+
+    public TenantRateLimitFilter(FranchiseProperties properties, ObjectProvider<RateLimitStore> store,
+                                 MeterRegistry registry, ObjectMapper objectMapper) {
+        this.config = properties.getRateLimit();
+        this.store = store.getIfAvailable(() -> new InMemoryRateLimitStore(config.getMaxTenants()));
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+        // An entry dropped while requests are running only lets the tenant exceed its cap
+        // briefly: those requests release the counter they acquired.
+        this.inFlight = Caffeine.newBuilder()
+                .maximumSize(config.getMaxTenants())
+                .expireAfterAccess(Duration.ofMinutes(5))
+                .build();
+        if (!config.isTenantTags()) {
+            for (Outcome outcome : Outcome.values()) {
+                counters.put(outcome, counter(outcome, null));
+            }
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!exchange.getRequest().getPath().value().startsWith("/api/")) {
+            return chain.filter(exchange);
+        }
+
+        String tenant = tenantOf(exchange.getRequest());
+        FranchiseProperties.Quota quota = config.getTenants().getOrDefault(tenant, config.getDefaults());
+        if (isStream(exchange.getRequest())) {
+            return limitRate(exchange, chain, tenant, quota);
+        }
+
+        return Mono.defer(() -> {
+            AtomicInteger running = inFlight.get(tenant, key -> new AtomicInteger());
+            if (!tryIncrement(running, quota.getMaxInFlight())) {
+                record(tenant, Outcome.CONCURRENCY_LIMITED);
+                return reject(exchange, Duration.ofSeconds(1), "Too many concurrent requests for tenant " + tenant);
+            }
+            // Released exactly once however the request ends: completed, failed, rejected or cancelled.
+            return limitRate(exchange, chain, tenant, quota)
+                    .doFinally(signal -> running.decrementAndGet());
+        });
+    }
+
+    private Mono<Void> limitRate(ServerWebExchange exchange, WebFilterChain chain, String tenant,
+                                 FranchiseProperties.Quota quota) {
+        return store.tryAcquire(tenant, quota)
+                .onErrorResume(error -> {
+                    // Failing open: an unreachable store must not take the API down with it.
+                    log.warn("Rate limit store failed for tenant {}, letting the request through", tenant, error);
+                    return Mono.just(Duration.ZERO);
+                })
+                .defaultIfEmpty(Duration.ZERO)
+                .flatMap(wait -> {
+                    if (!wait.isZero()) {
+                        record(tenant, Outcome.RATE_LIMITED);
+                        return reject(exchange, wait, "Rate limit exceeded for tenant " + tenant);
+                    }
+                    record(tenant, Outcome.ALLOWED);
+                    return chain.filter(exchange);
+                });
+    }
+
+    /**
+     * Server-sent event streams stay open for as long as a dashboard is shown, so they only
+     * take a token when opened and do not count against the in-flight cap. Only the stream
+     * route is exempt; asking another endpoint for an event stream does not lift the cap.
+     */
+    private static boolean isStream(ServerHttpRequest request) {
+        return request.getMethod() == HttpMethod.GET
+                && STOCK_EVENTS.matches(request.getPath().pathWithinApplication());
+    }
+
+    private String tenantOf(ServerHttpRequest request) {
+        String tenant = request.getHeaders().getFirst(config.getHeader());
+        if (tenant != null && !tenant.isBlank()) {
+            return tenant;
+        }
+        InetSocketAddress address = request.getRemoteAddress();
+        return address != null ? address.getHostString() : "unknown";
+    }
+
+    private static boolean tryIncrement(AtomicInteger running, int max) {
+        while (true) {
+            int current = running.get();
+            if (current >= max) {
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Writes the error body the {@code GlobalExceptionHandler} would, since exceptions thrown
+     * by filters never reach it.
+     */
+    private Mono<Void> reject(ServerWebExchange exchange, Duration wait, String message) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds(wait)));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("status", HttpStatus.TOO_MANY_REQUESTS.value());
+        body.put("error", HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+        body.put("message", message);
+        try {
+            byte[] bytes = objectMapper.writeValueAsBytes(body);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+        } catch (JsonProcessingException e) {
+            return response.setComplete();
+        }
+    }
+
+    static long retryAfterSeconds(Duration wait) {
+        long seconds = wait.toSeconds();
+        return wait.equals(Duration.ofSeconds(seconds)) ? Math.max(seconds, 1) : seconds + 1;
+    }
+
+    private void record(String tenant, Outcome outcome) {
+        if (!config.isTenantTags()) {
+            counters.get(outcome).increment();
+            return;
+        }
+        // Only configured tenants get a series of their own, so clients cannot grow the tag set.
+        String tag = config.getTenants().containsKey(tenant) ? tenant : "other";
+        counter(outcome, tag).increment();
+    }
+
+    private Counter counter(Outcome outcome, String tenant) {
+        Counter.Builder builder = Counter.builder(METRIC)
+                .description("Requests to the API by rate limiter decision")
+                .tag("outcome", outcome.tag);
+        if (tenant != null) {
+            builder.tag("tenant", tenant);
+        }
+        return builder.register(registry);
+    }
+
+    enum Outcome {
+        ALLOWED("allowed"),
+        RATE_LIMITED("rate_limited"),
+        CONCURRENCY_LIMITED("concurrency_limited");
+
+        private final String tag;
+
+        Outcome(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.franchise.api.repository;
+
+import java.util.List;
+
+/**
+ * Outcome of each item of a batch of stock changes, in the order of the items. An unmatched
+ * item changed nothing: its product is missing or, for a decrement, the stock did not cover it.
+ */
+public record BulkStockWrite(List<Outcome> outcomes) {
+
+    public enum Status {
+        APPLIED,
+        UNMATCHED,
+        FAILED
+    }
+
+    public record Outcome(Status status, String message) {
+
+        public static final Outcome APPLIED = new Outcome(Status.APPLIED, null);
+        public static final Outcome UNMATCHED = new Outcome(Status.UNMATCHED, null);
+
+        public static Outcome failed(String message) {
+            return new Outcome(Status.FAILED, message);
+        }
+    }
+
+    public boolean isComplete() {
+        return outcomes.stream().allMatch(outcome -> outcome.status() == Status.APPLIED);
+    }
+}
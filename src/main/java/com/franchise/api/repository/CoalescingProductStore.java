@@ -0,0 +1,382 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.sharding.ShardKey;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Write-combining variant of the embedded layout, enabled with
+ * {@code franchise.write-coalescing.enabled}.
+ * <p>
+ * Product writes to the same franchise are queued for {@code window}. The queued writes are
+ * then applied in arrival order to one freshly loaded copy, and the changed paths are written
+ * back with a single update guarded by the franchise version. A version conflict re-reads and
+ * re-applies the whole batch. Batches of one franchise run one after another, so writes keep
+ * their order. Each caller still gets its own outcome: the product after its own write, or
+ * empty when nothing matched, exactly as with the atomic updates.
+ * <p>
+ * Bulk stock updates, writes inside a transaction and every read go straight to
+ * {@link EmbeddedProductStore}.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnExpression("'${franchise.storage.layout:embedded}' == 'embedded' and ${franchise.write-coalescing.enabled:false}")
+public class CoalescingProductStore implements ProductStore {
+
+    private final EmbeddedProductStore delegate;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final OptimisticWriteRetry writeRetry;
+    private final FranchiseProperties.WriteCoalescing config;
+
+    private final Map<LaneKey, Lane> lanes = new ConcurrentHashMap<>();
+
+    public CoalescingProductStore(EmbeddedProductStore delegate, ReactiveMongoTemplate mongoTemplate,
+                                  OptimisticWriteRetry writeRetry, FranchiseProperties properties) {
+        this.delegate = delegate;
+        this.mongoTemplate = mongoTemplate;
+        this.writeRetry = writeRetry;
+        this.config = properties.getWriteCoalescing();
+    }
+
+    @Override
+    public Mono<Franchise> insertFranchise(Franchise franchise) {
+        return delegate.insertFranchise(franchise);
+    }
+
+    @Override
+    public Mono<Product> addProduct(String franchiseId, String branchId, Product product) {
+        return write(franchiseId, () -> delegate.addProduct(franchiseId, branchId, product),
+                batch -> batch.branch(branchId)
+                        .map(branch -> {
+                            Product added = copy(product);
+                            branch.getProducts().add(added);
+                            batch.restructured(branch);
+                            batch.stockChange(branchId, added.getId(), added.getStock(), StockEvent.Type.ADDED);
+                            return copy(added);
+                        }));
+    }
+
+    @Override
+    public Mono<Product> removeProduct(String franchiseId, String branchId, String productId) {
+        return write(franchiseId, () -> delegate.removeProduct(franchiseId, branchId, productId),
+                batch -> batch.branch(branchId)
+                        .flatMap(branch -> batch.product(branchId, productId)
+                                .map(product -> {
+                                    branch.getProducts().remove(product);
+                                    batch.restructured(branch);
+                                    batch.stockChange(branchId, productId, null, StockEvent.Type.REMOVED);
+                                    return copy(product);
+                                })));
+    }
+
+    @Override
+    public Mono<Product> setStock(String franchiseId, String branchId, String productId, int stock) {
+        return write(franchiseId, () -> delegate.setStock(franchiseId, branchId, productId, stock),
+                batch -> batch.product(branchId, productId)
+                        .map(product -> {
+                            product.setStock(stock);
+                            batch.changed(branchId, product);
+                            batch.stockChange(branchId, productId, stock, StockEvent.Type.UPDATED);
+                            return copy(product);
+                        }));
+    }
+
+    @Override
+    public Mono<Product> incrementStock(String franchiseId, String branchId, String productId, int delta) {
+        return write(franchiseId, () -> delegate.incrementStock(franchiseId, branchId, productId, delta),
+                batch -> batch.product(branchId, productId)
+                        .filter(product -> delta >= 0 || product.getStock() >= -delta)
+                        .map(product -> {
+                            product.setStock(product.getStock() + delta);
+                            batch.changed(branchId, product);
+                            batch.stockChange(branchId, productId, product.getStock(), StockEvent.Type.UPDATED);
+                            return copy(product);
+                        }));
+    }
+
+    @Override
+    public Mono<Product> setName(String franchiseId, String branchId, String productId, String name) {
+        return write(franchiseId, () -> delegate.setName(franchiseId, branchId, productId, name),
+                batch -> batch.product(branchId, productId)
+                        .map(product -> {
+                            product.setName(name);
+                            batch.changed(branchId, product);
+                            return copy(product);
+                        }));
+    }
+
+    @Override
+    public Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items) {
+        return delegate.bulkUpdateStock(items);
+    }
+
+    @Override
+    public Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit) {
+        return delegate.findTopProductsByBranch(franchiseId, limit);
+    }
+
+    @Override
+    public Flux<ProductStockReport> findTopProducts(int limit) {
+        return delegate.findTopProducts(limit);
+    }
+
+    @Override
+    public Flux<LowStockBranchReport> findLowStockBranches(int threshold) {
+        return delegate.findLowStockBranches(threshold);
+    }
+
+    @Override
+    public Mono<Franchise> findFranchiseByProduct(String productId) {
+        return delegate.findFranchiseByProduct(productId);
+    }
+
+    @Override
+    public Mono<Franchise> withProducts(Franchise franchise) {
+        return delegate.withProducts(franchise);
+    }
+
+    /**
+     * Inside a transaction the write goes straight to the delegate: a flush runs on its own
+     * subscription, outside the transaction, and could not be rolled back with it.
+     */
+    private Mono<Product> write(String franchiseId, Supplier<Mono<Product>> direct,
+                                Function<Batch, Optional<Product>> change) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .map(TransactionSynchronizationManager::isActualTransactionActive)
+                .onErrorResume(NoTransactionException.class, e -> Mono.just(false))
+                .flatMap(inTransaction -> inTransaction
+                        ? direct.get()
+                        : ShardKey.inShard(region -> enqueue(new LaneKey(franchiseId, region), change)));
+    }
+
+    private Mono<Product> enqueue(LaneKey key, Function<Batch, Optional<Product>> change) {
+        return Mono.defer(() -> {
+            Mutation mutation = new Mutation(change, Sinks.one());
+            lanes.compute(key, (k, lane) -> {
+                Lane current = lane != null ? lane : new Lane();
+                current.queue.add(mutation);
+                if (!current.scheduled && !current.flushing) {
+                    current.scheduled = true;
+                    Mono.delay(config.getWindow()).subscribe(tick -> flush(key));
+                }
+                return current;
+            });
+            return mutation.result().asMono();
+        });
+    }
+
+    private void flush(LaneKey key) {
+        List<Mutation> mutations = new ArrayList<>();
+        lanes.computeIfPresent(key, (k, lane) -> {
+            int size = Math.min(lane.queue.size(), config.getMaxBatchSize());
+            List<Mutation> head = lane.queue.subList(0, size);
+            mutations.addAll(head);
+            head.clear();
+            lane.scheduled = false;
+            lane.flushing = true;
+            return lane;
+        });
+
+        writeRetry.execute("coalesced-write", () -> apply(key, mutations))
+                .defaultIfEmpty(Collections.nCopies(mutations.size(), Optional.empty()))
+                .doFinally(signal -> next(key))
+                .subscribe(
+                        outcomes -> {
+                            for (int i = 0; i < mutations.size(); i++) {
+                                outcomes.get(i).ifPresentOrElse(mutations.get(i).result()::tryEmitValue,
+                                        mutations.get(i).result()::tryEmitEmpty);
+                            }
+                        },
+                        error -> {
+                            log.warn("Coalesced write of {} changes to franchise {} failed",
+                                    mutations.size(), key.franchiseId(), error);
+                            mutations.forEach(mutation -> mutation.result().tryEmitError(error));
+                        });
+    }
+
+    /**
+     * Schedules the writes queued while the previous batch was in flight, or drops the lane.
+     */
+    private void next(LaneKey key) {
+        lanes.computeIfPresent(key, (k, lane) -> {
+            lane.flushing = false;
+            if (lane.queue.isEmpty()) {
+                return null;
+            }
+            lane.scheduled = true;
+            Mono.delay(config.getWindow()).subscribe(tick -> flush(key));
+            return lane;
+        });
+    }
+
+    /**
+     * Loads the franchise, applies every queued write in order and persists the result.
+     * Completes empty when the franchise does not exist.
+     */
+    private Mono<List<Optional<Product>>> apply(LaneKey key, List<Mutation> mutations) {
+        return mongoTemplate.findOne(query(key.franchise()), Franchise.class)
+                .flatMap(franchise -> {
+                    Batch batch = new Batch(franchise);
+                    List<Optional<Product>> outcomes = mutations.stream()
+                            .map(mutation -> mutation.change().apply(batch))
+                            .toList();
+                    if (batch.isEmpty()) {
+                        return Mono.just(outcomes);
+                    }
+                    return mongoTemplate.updateFirst(
+                                    query(key.franchise().and("version").is(franchise.getVersion())),
+                                    batch.update(), Franchise.class)
+                            .flatMap(result -> result.getMatchedCount() > 0
+                                    ? Mono.just(outcomes)
+                                    : Mono.error(new OptimisticLockingFailureException(
+                                            "Franchise " + key.franchiseId() + " changed during a coalesced write")));
+                });
+    }
+
+    private static Product copy(Product product) {
+        return Product.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .stock(product.getStock())
+                .build();
+    }
+
+    /**
+     * Writes are queued per franchise and region, so a flush, which runs outside the request,
+     * still targets the shard of the franchise.
+     */
+    private record LaneKey(String franchiseId, String region) {
+
+        Criteria franchise() {
+            return ShardKey.franchise(franchiseId, region);
+        }
+    }
+
+    private record Mutation(Function<Batch, Optional<Product>> change, Sinks.One<Product> result) {
+    }
+
+    /**
+     * Writes waiting for one franchise. Only touched inside {@code lanes.compute*}, which
+     * serializes access per lane.
+     */
+    private static final class Lane {
+        private final List<Mutation> queue = new ArrayList<>();
+        private boolean scheduled;
+        private boolean flushing;
+    }
+
+    /**
+     * The loaded franchise plus what the queued writes changed in it. Positions are stable
+     * because the update only applies to the version that was loaded.
+     */
+    private static final class Batch {
+
+        private final Franchise franchise;
+        private final Set<Branch> restructured = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<Branch, Set<Product>> changed = new IdentityHashMap<>();
+        private final List<Document> stockChanges = new ArrayList<>();
+
+        Batch(Franchise franchise) {
+            this.franchise = franchise;
+        }
+
+        /**
+         * Scans the lists instead of using their id indexes: the queued writes keep adding and
+         * removing products, and each change would have the index rebuilt on the next lookup.
+         */
+        Optional<Branch> branch(String branchId) {
+            return franchise.getBranches().stream()
+                    .filter(branch -> branchId.equals(branch.getId()))
+                    .findFirst();
+        }
+
+        Optional<Product> product(String branchId, String productId) {
+            return branch(branchId).flatMap(branch -> branch.getProducts().stream()
+                    .filter(product -> productId.equals(product.getId()))
+                    .findFirst());
+        }
+
+        void restructured(Branch branch) {
+            restructured.add(branch);
+        }
+
+        void changed(String branchId, Product product) {
+            branch(branchId).ifPresent(branch -> changed
+                    .computeIfAbsent(branch, key -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                    .add(product));
+        }
+
+        void stockChange(String branchId, String productId, Integer stock, StockEvent.Type type) {
+            stockChanges.add(FranchiseRepositoryCustomImpl.stockChange(branchId, productId, stock, type));
+        }
+
+        boolean isEmpty() {
+            return restructured.isEmpty() && changed.isEmpty();
+        }
+
+        /**
+         * Replaces the product arrays of branches that gained or lost products and sets only
+         * the modified products of the others.
+         */
+        Update update() {
+            Update update = new Update().inc("version", 1);
+            List<Branch> branches = franchise.getBranches();
+            for (int b = 0; b < branches.size(); b++) {
+                Branch branch = branches.get(b);
+                if (restructured.contains(branch)) {
+                    update.set("branches." + b + ".products", branch.getProducts());
+                    continue;
+                }
+                Set<Product> products = changed.get(branch);
+                if (products == null) {
+                    continue;
+                }
+                List<Product> list = branch.getProducts();
+                for (int p = 0; p < list.size(); p++) {
+                    if (products.contains(list.get(p))) {
+                        update.set("branches." + b + ".products." + p, list.get(p));
+                    }
+                }
+            }
+            if (!stockChanges.isEmpty()) {
+                update.set(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, stockChanges);
+            }
+            return update;
+        }
+    }
+}
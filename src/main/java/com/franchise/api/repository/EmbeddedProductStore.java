@@ -0,0 +1,87 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Default layout: products live inside the branches of the franchise document and are
+ * changed with the positional updates of {@link FranchiseRepositoryCustom}.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "franchise.storage", name = "layout", havingValue = "embedded", matchIfMissing = true)
+public class EmbeddedProductStore implements ProductStore {
+
+    private final FranchiseRepository franchiseRepository;
+
+    @Override
+    public Mono<Franchise> insertFranchise(Franchise franchise) {
+        return franchiseRepository.insert(franchise);
+    }
+
+    @Override
+    public Mono<Product> addProduct(String franchiseId, String branchId, Product product) {
+        return franchiseRepository.pushProduct(franchiseId, branchId, product);
+    }
+
+    @Override
+    public Mono<Product> removeProduct(String franchiseId, String branchId, String productId) {
+        return franchiseRepository.pullProduct(franchiseId, branchId, productId);
+    }
+
+    @Override
+    public Mono<Product> setStock(String franchiseId, String branchId, String productId, int stock) {
+        return franchiseRepository.setProductStock(franchiseId, branchId, productId, stock);
+    }
+
+    @Override
+    public Mono<Product> incrementStock(String franchiseId, String branchId, String productId, int delta) {
+        return franchiseRepository.incrementProductStock(franchiseId, branchId, productId, delta);
+    }
+
+    @Override
+    public Mono<Product> setName(String franchiseId, String branchId, String productId, String name) {
+        return franchiseRepository.setProductName(franchiseId, branchId, productId, name);
+    }
+
+    @Override
+    public Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items) {
+        return franchiseRepository.bulkUpdateStock(items);
+    }
+
+    @Override
+    public Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit) {
+        return franchiseRepository.findTopProductsByBranch(franchiseId, limit);
+    }
+
+    @Override
+    public Flux<ProductStockReport> findTopProducts(int limit) {
+        return franchiseRepository.findTopProducts(limit);
+    }
+
+    @Override
+    public Flux<LowStockBranchReport> findLowStockBranches(int threshold) {
+        return franchiseRepository.findLowStockBranches(threshold);
+    }
+
+    @Override
+    public Mono<Franchise> findFranchiseByProduct(String productId) {
+        return franchiseRepository.findByProduct(productId);
+    }
+
+    @Override
+    public Mono<Franchise> withProducts(Franchise franchise) {
+        return Mono.just(franchise);
+    }
+}
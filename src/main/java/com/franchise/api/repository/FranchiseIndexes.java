@@ -0,0 +1,66 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.sharding.ShardKey;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Secondary indexes of the franchises collection. Lookups by embedded branch or product id
+ * and stock-ordered scans would otherwise read every franchise. The indexes on embedded
+ * arrays are multikey, with one entry per branch or product. With sharding enabled the
+ * shard key index {@code {region: 1, _id: 1}}, which {@code sh.shardCollection} requires, is
+ * created as well.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FranchiseIndexes {
+
+    static final List<Index> INDEXES = List.of(
+            new Index().on("name", Sort.Direction.ASC).named("name"),
+            new Index().on("branches._id", Sort.Direction.ASC).named("branch_id"),
+            new Index().on("branches.products._id", Sort.Direction.ASC).named("product_id"),
+            new Index().on("branches.products.stock", Sort.Direction.DESC).named("product_stock"));
+
+    static final Index SHARD_KEY = new Index()
+            .on(ShardKey.FIELD, Sort.Direction.ASC)
+            .on("_id", Sort.Direction.ASC)
+            .named("shard_key");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FranchiseProperties properties;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        createIndexes()
+                .doOnError(e -> log.error("Could not create the indexes of the franchises collection", e))
+                .subscribe();
+    }
+
+    /**
+     * Creates the missing indexes; existing ones with the same definition are left as they are.
+     */
+    public Mono<Void> createIndexes() {
+        ReactiveIndexOperations indexOps = mongoTemplate.indexOps(Franchise.class);
+        List<Index> indexes = properties.getSharding().isEnabled()
+                ? Stream.concat(INDEXES.stream(), Stream.of(SHARD_KEY)).toList()
+                : INDEXES;
+        return Flux.fromIterable(indexes)
+                .concatMap(indexOps::ensureIndex)
+                .then();
+    }
+}
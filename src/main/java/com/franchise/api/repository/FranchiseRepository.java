@@ -4,6 +4,10 @@ import com.franchise.api.model.Franchise;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 
+/**
+ * The derived {@code findById}, {@code findAll}, ... ignore the shard key; request-facing code
+ * uses the region-aware lookups of {@link FranchiseRepositoryCustom} instead.
+ */
 @Repository
-public interface FranchiseRepository extends ReactiveMongoRepository<Franchise, String> {
+public interface FranchiseRepository extends ReactiveMongoRepository<Franchise, String>, FranchiseRepositoryCustom {
 }
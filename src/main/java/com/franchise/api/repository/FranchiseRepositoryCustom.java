@@ -0,0 +1,123 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Atomic write path for the embedded branches and products of a {@link Franchise}.
+ * <p>
+ * Every operation is a single positional update executed inside MongoDB, so no document
+ * is read before writing and concurrent writers never overwrite each other's changes.
+ * Operations complete empty when the franchise, branch or product does not match.
+ * <p>
+ * Except for the collection-wide reports, every query is narrowed to the region of the
+ * current request ({@link com.franchise.api.sharding.ShardKey}), so it is routed to a single shard.
+ */
+public interface FranchiseRepositoryCustom {
+
+    /**
+     * Field set by every stock-changing write to describe the change by id. Change stream
+     * update descriptions only carry array positions, so this is what lets listeners tell
+     * which branch and product changed. Each change has a fresh {@code changeId}, so a write
+     * repeating the previous change still shows up in the update description. Coalesced
+     * writes, and normalized writes of several products, store an array of such changes.
+     */
+    String LAST_STOCK_CHANGE = "lastStockChange";
+
+    Mono<Franchise> findFranchise(String franchiseId);
+
+    Flux<Franchise> findFranchises(Collection<String> franchiseIds);
+
+    Flux<Franchise> findAllFranchises();
+
+    Mono<Boolean> existsFranchise(String franchiseId);
+
+    /**
+     * The franchise holding a branch, answered by the {@code branches._id} index.
+     */
+    Mono<Franchise> findByBranch(String branchId);
+
+    /**
+     * The franchise holding an embedded product, answered by the {@code branches.products._id} index.
+     */
+    Mono<Franchise> findByProduct(String productId);
+
+    /**
+     * Keyset page of franchises ordered by id, starting right after {@code afterId} (or from the
+     * beginning when it is {@code null}). When {@code fields} is not empty only those paths are loaded.
+     */
+    Flux<Franchise> findPage(String afterId, int limit, Collection<String> fields);
+
+    /**
+     * The {@code limit} products with the largest stock of every branch, computed by an
+     * aggregation so only the result rows leave the database. Branches keep their order
+     * and branches without products are skipped.
+     */
+    Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit);
+
+    /**
+     * The {@code limit} products with the largest stock across every franchise.
+     */
+    Flux<ProductStockReport> findTopProducts(int limit);
+
+    /**
+     * Every branch, across all franchises, holding products whose stock is below
+     * {@code threshold}, each with only those products.
+     */
+    Flux<LowStockBranchReport> findLowStockBranches(int threshold);
+
+    /**
+     * Only the id and version of a franchise, so a conditional read can be answered
+     * without loading its branches and products.
+     */
+    Mono<Franchise> findRevision(String franchiseId);
+
+    /**
+     * Bumps the version without changing anything else, for writes kept outside the
+     * franchise document. Completes with whether the franchise exists.
+     */
+    Mono<Boolean> touch(String franchiseId);
+
+    /**
+     * Bumps the version and records {@code changes} in {@link #LAST_STOCK_CHANGE}, for stock
+     * writes kept outside the franchise document that the stock-event stream must still see.
+     */
+    Mono<Boolean> touch(String franchiseId, List<StockEvent> changes);
+
+    Mono<Franchise> setFranchiseName(String franchiseId, String name);
+
+    Mono<Branch> pushBranch(String franchiseId, Branch branch);
+
+    Mono<Branch> setBranchName(String franchiseId, String branchId, String name);
+
+    Mono<Product> pushProduct(String franchiseId, String branchId, Product product);
+
+    Mono<Product> pullProduct(String franchiseId, String branchId, String productId);
+
+    Mono<Product> setProductStock(String franchiseId, String branchId, String productId, int stock);
+
+    /**
+     * Adds {@code delta} to the stock with {@code $inc}. A negative delta only matches while the
+     * current stock covers it, so the stock can never drop below zero.
+     */
+    Mono<Product> incrementProductStock(String franchiseId, String branchId, String productId, int delta);
+
+    Mono<Product> setProductName(String franchiseId, String branchId, String productId, String name);
+
+    /**
+     * Applies a batch of absolute or relative stock changes with plain updates: an item that
+     * matches nothing is reported as unmatched, not created. See {@link StockBulkWriter}.
+     */
+    Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items);
+}
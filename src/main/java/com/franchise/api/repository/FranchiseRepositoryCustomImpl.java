@@ -0,0 +1,421 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.sharding.ShardKey;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.franchise.api.sharding.ShardKey.franchise;
+import static com.franchise.api.sharding.ShardKey.inShard;
+import static com.franchise.api.sharding.ShardKey.inShardMany;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@RequiredArgsConstructor
+public class FranchiseRepositoryCustomImpl implements FranchiseRepositoryCustom {
+
+    // Embedded ids are persisted as "_id"; array filters are sent verbatim, so they use the stored
+    // name and the stored type (see storedId).
+    private static final String BRANCH_FILTER = "b._id";
+    private static final String PRODUCT_FILTER = "p._id";
+
+    private static final String VERSION = "version";
+
+    // Decrements of a bulk batch are sent one by one, this many at a time.
+    private static final int DECREMENT_CONCURRENCY = 16;
+
+    // Collection-wide reports may exceed the in-memory limit of a pipeline stage.
+    private static final AggregationOptions REPORT_OPTIONS = AggregationOptions.builder()
+            .allowDiskUse(true)
+            .build();
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Override
+    public Mono<Franchise> findFranchise(String franchiseId) {
+        return inShard(region -> mongoTemplate.findOne(query(franchise(franchiseId, region)), Franchise.class));
+    }
+
+    @Override
+    public Flux<Franchise> findFranchises(Collection<String> franchiseIds) {
+        return inShardMany(region -> mongoTemplate.find(inRegion(query(where("id").in(franchiseIds)), region), Franchise.class));
+    }
+
+    @Override
+    public Flux<Franchise> findAllFranchises() {
+        return inShardMany(region -> mongoTemplate.find(inRegion(new Query(), region), Franchise.class));
+    }
+
+    @Override
+    public Mono<Boolean> existsFranchise(String franchiseId) {
+        return inShard(region -> mongoTemplate.exists(query(franchise(franchiseId, region)), Franchise.class));
+    }
+
+    @Override
+    public Mono<Franchise> findByBranch(String branchId) {
+        return inShard(region -> mongoTemplate.findOne(
+                inRegion(query(where("branches.id").is(branchId)), region), Franchise.class));
+    }
+
+    @Override
+    public Mono<Franchise> findByProduct(String productId) {
+        return inShard(region -> mongoTemplate.findOne(
+                inRegion(query(where("branches.products.id").is(productId)), region), Franchise.class));
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit, Collection<String> fields) {
+        return inShardMany(region -> {
+            Query query = inRegion(new Query(), region)
+                    .with(Sort.by(Sort.Direction.ASC, "id"))
+                    .limit(limit);
+            if (afterId != null) {
+                query.addCriteria(where("id").gt(afterId));
+            }
+            fields.forEach(query.fields()::include);
+            return mongoTemplate.find(query, Franchise.class);
+        });
+    }
+
+    @Override
+    public Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit) {
+        return inShardMany(region -> mongoTemplate.aggregate(topProducts(franchise(franchiseId, region), limit),
+                TopProductResponse.class));
+    }
+
+    /**
+     * Collection-wide reports read every franchise and are not narrowed to a region.
+     */
+    @Override
+    public Flux<ProductStockReport> findTopProducts(int limit) {
+        Document row = new Document("franchiseId", "$_id")
+                .append("franchiseName", "$name")
+                .append("branchId", "$branches._id")
+                .append("branchName", "$branches.name")
+                .append("productId", "$branches.products._id")
+                .append("productName", "$branches.products.name")
+                .append("stock", "$branches.products.stock");
+        Aggregation aggregation = Aggregation.newAggregation(
+                stage(new Document("$unwind", "$branches")),
+                stage(new Document("$unwind", "$branches.products")),
+                stage(new Document("$group", new Document("_id", null)
+                        .append("top", new Document("$topN", new Document("n", limit)
+                                .append("sortBy", new Document("branches.products.stock", -1))
+                                .append("output", row))))),
+                stage(new Document("$unwind", "$top")),
+                stage(new Document("$replaceWith", "$top")))
+                .withOptions(REPORT_OPTIONS);
+        return mongoTemplate.aggregate(aggregation, Franchise.class, ProductStockReport.class);
+    }
+
+    @Override
+    public Flux<LowStockBranchReport> findLowStockBranches(int threshold) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                // Discards whole franchises without any low-stock product before unwinding.
+                stage(new Document("$match", new Document("branches.products.stock", new Document("$lt", threshold)))),
+                stage(new Document("$unwind", "$branches")),
+                stage(new Document("$project", new Document("_id", 0)
+                        .append("franchiseId", "$_id")
+                        .append("franchiseName", "$name")
+                        .append("branchId", "$branches._id")
+                        .append("branchName", "$branches.name")
+                        .append("products", new Document("$filter", new Document("input", "$branches.products")
+                                .append("as", "product")
+                                .append("cond", new Document("$lt", List.of("$$product.stock", threshold))))))),
+                stage(new Document("$match", new Document("products", new Document("$ne", List.of())))))
+                .withOptions(REPORT_OPTIONS);
+        return mongoTemplate.aggregate(aggregation, Franchise.class, LowStockBranchReport.class);
+    }
+
+    @Override
+    public Mono<Franchise> findRevision(String franchiseId) {
+        return inShard(region -> {
+            Query query = query(franchise(franchiseId, region));
+            query.fields().include(VERSION);
+            return mongoTemplate.findOne(query, Franchise.class);
+        });
+    }
+
+    @Override
+    public Mono<Boolean> touch(String franchiseId) {
+        return inShard(region -> mongoTemplate.updateFirst(query(franchise(franchiseId, region)), revision(), Franchise.class))
+                .map(result -> result.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<Boolean> touch(String franchiseId, List<StockEvent> changes) {
+        List<Document> stockChanges = changes.stream()
+                .map(change -> stockChange(change.getBranchId(), change.getProductId(), change.getStock(), change.getType()))
+                .toList();
+        Update update = revision().set(LAST_STOCK_CHANGE, stockChanges.size() == 1 ? stockChanges.get(0) : stockChanges);
+        return inShard(region -> mongoTemplate.updateFirst(query(franchise(franchiseId, region)), update, Franchise.class))
+                .map(result -> result.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<Franchise> setFranchiseName(String franchiseId, String name) {
+        return inShard(region -> mongoTemplate.findAndModify(
+                query(franchise(franchiseId, region)),
+                revision().set("name", name),
+                FindAndModifyOptions.options().returnNew(true),
+                Franchise.class));
+    }
+
+    @Override
+    public Mono<Branch> pushBranch(String franchiseId, Branch branch) {
+        return inShard(region -> mongoTemplate.updateFirst(
+                        query(franchise(franchiseId, region)),
+                        revision().push("branches", branch),
+                        Franchise.class))
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(result -> branch);
+    }
+
+    @Override
+    public Mono<Branch> setBranchName(String franchiseId, String branchId, String name) {
+        Update update = revision()
+                .set("branches.$[b].name", name)
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)));
+        return inShard(region -> modifyBranch(branchQuery(franchiseId, region, branchId), update, true));
+    }
+
+    @Override
+    public Mono<Product> pushProduct(String franchiseId, String branchId, Product product) {
+        Update update = revision()
+                .push("branches.$[b].products", product)
+                .set(LAST_STOCK_CHANGE, stockChange(branchId, product.getId(), product.getStock(), StockEvent.Type.ADDED))
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)));
+        return inShard(region -> mongoTemplate.updateFirst(branchQuery(franchiseId, region, branchId), update, Franchise.class))
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(result -> product);
+    }
+
+    @Override
+    public Mono<Product> pullProduct(String franchiseId, String branchId, String productId) {
+        Update update = revision()
+                .pull("branches.$[b].products", query(where("id").is(productId)))
+                .set(LAST_STOCK_CHANGE, stockChange(branchId, productId, null, StockEvent.Type.REMOVED))
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)));
+        // The pre-image is returned so the removed product can be handed back to the caller.
+        return inShard(region -> modifyBranch(productQuery(franchiseId, region, branchId, productId), update, false))
+                .flatMap(branch -> findProduct(branch, productId));
+    }
+
+    @Override
+    public Mono<Product> setProductStock(String franchiseId, String branchId, String productId, int stock) {
+        Update update = revision()
+                .set("branches.$[b].products.$[p].stock", stock)
+                .set(LAST_STOCK_CHANGE, stockChange(branchId, productId, stock, StockEvent.Type.UPDATED))
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)))
+                .filterArray(where(PRODUCT_FILTER).is(storedId(productId)));
+        return inShard(region -> modifyBranch(productQuery(franchiseId, region, branchId, productId), update, true))
+                .flatMap(branch -> findProduct(branch, productId));
+    }
+
+    @Override
+    public Mono<Product> incrementProductStock(String franchiseId, String branchId, String productId, int delta) {
+        Update update = revision()
+                .inc("branches.$[b].products.$[p].stock", delta)
+                .set(LAST_STOCK_CHANGE, stockChange(branchId, productId, null, StockEvent.Type.UPDATED))
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)))
+                .filterArray(where(PRODUCT_FILTER).is(storedId(productId)));
+        return inShard(region -> modifyBranch(
+                        productQuery(franchiseId, region, branchId, stockGuard(productId, delta)), update, true))
+                .flatMap(branch -> findProduct(branch, productId));
+    }
+
+    @Override
+    public Mono<Product> setProductName(String franchiseId, String branchId, String productId, String name) {
+        Update update = revision()
+                .set("branches.$[b].products.$[p].name", name)
+                .filterArray(where(BRANCH_FILTER).is(storedId(branchId)))
+                .filterArray(where(PRODUCT_FILTER).is(storedId(productId)));
+        return inShard(region -> modifyBranch(productQuery(franchiseId, region, branchId, productId), update, true))
+                .flatMap(branch -> findProduct(branch, productId));
+    }
+
+    @Override
+    public Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items) {
+        return StockBulkWriter.write(items,
+                indexes -> bulkWrite(items, indexes),
+                item -> inShard(region -> mongoTemplate.updateFirst(stockQuery(item, region), stockUpdate(item), Franchise.class))
+                        .map(result -> result.getMatchedCount() > 0 ? Outcome.APPLIED : Outcome.UNMATCHED),
+                DECREMENT_CONCURRENCY);
+    }
+
+    private static TypedAggregation<Franchise> topProducts(Criteria franchise, int limit) {
+        return Aggregation.newAggregation(Franchise.class,
+                Aggregation.match(franchise),
+                stage(new Document("$unwind", "$branches")),
+                stage(new Document("$project", new Document("_id", 0)
+                        .append("franchiseVersion", "$version")
+                        .append("branchId", "$branches._id")
+                        .append("branchName", "$branches.name")
+                        .append("products", new Document("$firstN", new Document("n", limit)
+                                .append("input", new Document("$sortArray", new Document("input", "$branches.products")
+                                        .append("sortBy", new Document("stock", -1)))))))),
+                stage(new Document("$unwind", "$products")),
+                stage(new Document("$project", new Document("productId", "$products._id")
+                        .append("productName", "$products.name")
+                        .append("stock", "$products.stock")
+                        .append("branchId", 1)
+                        .append("branchName", 1)
+                        .append("franchiseVersion", 1))));
+    }
+
+    /**
+     * Applies the update and returns only the matched branch, using a positional projection
+     * so the rest of the franchise never leaves the database.
+     */
+    private Mono<Branch> modifyBranch(Query query, Update update, boolean returnNew) {
+        query.fields().position("branches", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(returnNew), Franchise.class)
+                .flatMap(franchise -> Mono.justOrEmpty(franchise.getBranches().stream().findFirst()));
+    }
+
+    /**
+     * Ids that are valid ObjectIds are stored as ObjectIds by the mapping layer, older UUIDs as
+     * strings. Array filters bypass that mapping, so their values are converted here.
+     */
+    private static Object storedId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
+
+    /**
+     * Starts an update that also bumps the franchise version, so every atomic write is seen
+     * by {@code @Version} checks of full-document saves made from an older copy.
+     */
+    private static Update revision() {
+        return new Update().inc(VERSION, 1);
+    }
+
+    /**
+     * Wraps a raw pipeline stage. Embedded ids are stored as "_id", which the typed
+     * aggregation API cannot reference once arrays have been unwound.
+     */
+    private static AggregationOperation stage(Document stage) {
+        return context -> stage;
+    }
+
+    private static Query inRegion(Query query, String region) {
+        return region != null ? query.addCriteria(where(ShardKey.FIELD).is(region)) : query;
+    }
+
+    private static Query branchQuery(String franchiseId, String region, String branchId) {
+        return query(franchise(franchiseId, region).and("branches.id").is(branchId));
+    }
+
+    private static Query productQuery(String franchiseId, String region, String branchId, String productId) {
+        return query(franchise(franchiseId, region)
+                .and("branches").elemMatch(where("id").is(branchId).and("products.id").is(productId)));
+    }
+
+    private static Query productQuery(String franchiseId, String region, String branchId, Criteria product) {
+        return query(franchise(franchiseId, region)
+                .and("branches").elemMatch(where("id").is(branchId).and("products").elemMatch(product)));
+    }
+
+    /**
+     * Matches the product only while its stock covers a negative delta, which keeps the
+     * stock from going below zero without reading it first.
+     */
+    private static Criteria stockGuard(String productId, int delta) {
+        Criteria product = where("id").is(productId);
+        return delta < 0 ? product.and("stock").gte(-delta) : product;
+    }
+
+    private static Query stockQuery(BulkStockUpdateItem item, String region) {
+        Criteria product = item.getDelta() != null
+                ? stockGuard(item.getProductId(), item.getDelta())
+                : where("id").is(item.getProductId());
+        return productQuery(item.getFranchiseId(), region, item.getBranchId(), product);
+    }
+
+    private static Update stockUpdate(BulkStockUpdateItem item) {
+        Update update = item.getDelta() != null
+                ? revision().inc("branches.$[b].products.$[p].stock", item.getDelta())
+                : revision().set("branches.$[b].products.$[p].stock", item.getStock());
+        return update
+                .set(LAST_STOCK_CHANGE, stockChange(item.getBranchId(), item.getProductId(), item.getStock(),
+                        StockEvent.Type.UPDATED))
+                .filterArray(where(BRANCH_FILTER).is(storedId(item.getBranchId())))
+                .filterArray(where(PRODUCT_FILTER).is(storedId(item.getProductId())));
+    }
+
+    /**
+     * Describes a stock change by ids. The stock is left out for {@code $inc}, where the new
+     * value is only known to the database; listeners take it from the update description.
+     * A change stream leaves out fields set to the value they already had, so each marker
+     * carries a fresh id: otherwise a repeated increment of the same product would go unseen.
+     */
+    static Document stockChange(String branchId, String productId, Integer stock, StockEvent.Type type) {
+        Document change = new Document("changeId", new ObjectId())
+                .append("branchId", branchId)
+                .append("productId", productId)
+                .append("type", type.name());
+        if (stock != null) {
+            change.append("stock", stock);
+        }
+        return change;
+    }
+
+    /**
+     * Sends absolute stocks and increments in one unordered bulk; the franchises are only
+     * read back when fewer updates matched than were sent.
+     */
+    private Mono<Map<Integer, Outcome>> bulkWrite(List<BulkStockUpdateItem> items, List<Integer> indexes) {
+        return inShard(region -> {
+            ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Franchise.class);
+            indexes.forEach(index -> bulk.updateOne(stockQuery(items.get(index), region), stockUpdate(items.get(index))));
+            return StockBulkWriter.execute(bulk)
+                    .flatMap(result -> StockBulkWriter.outcomes(items, indexes, result, written -> existingProducts(written, region)));
+        });
+    }
+
+    private Mono<Set<List<String>>> existingProducts(List<BulkStockUpdateItem> items, String region) {
+        Set<String> franchiseIds = items.stream()
+                .map(BulkStockUpdateItem::getFranchiseId)
+                .collect(Collectors.toSet());
+        Query query = inRegion(query(where("id").in(franchiseIds)), region);
+        query.fields().include("branches.id", "branches.products.id");
+        return mongoTemplate.find(query, Franchise.class)
+                .flatMapIterable(franchise -> franchise.getBranches().stream()
+                        .flatMap(branch -> branch.getProducts().stream()
+                                .map(product -> List.of(franchise.getId(), branch.getId(), product.getId())))
+                        .toList())
+                .collect(Collectors.toSet());
+    }
+
+    private static Mono<Product> findProduct(Branch branch, String productId) {
+        return Mono.justOrEmpty(branch.findProduct(productId));
+    }
+}
@@ -0,0 +1,384 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.model.ProductDocument;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.sharding.ShardKey;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.bson.Document;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Normalized layout: one document per product in the {@code products} collection, indexed
+ * by franchise, branch and stock. Stock writes touch a small document instead of rewriting
+ * a franchise with every branch and product in it, and the franchise documents stay small
+ * enough to cache.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "franchise.storage", name = "layout", havingValue = "normalized")
+public class NormalizedProductStore implements ProductStore {
+
+    // Decrements of a bulk batch, and the franchises it touches, are written this many at a time.
+    private static final int BULK_CONCURRENCY = 16;
+
+    // Franchise names are looked up for this many report rows at a time.
+    private static final int REPORT_LOOKUP_BATCH = 256;
+
+    private static final FindAndModifyOptions RETURN_NEW = FindAndModifyOptions.options().returnNew(true);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final ProductDocumentRepository productRepository;
+    private final FranchiseRepository franchiseRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        Flux.fromIterable(resolver.resolveIndexFor(ProductDocument.class))
+                .concatMap(index -> mongoTemplate.indexOps(ProductDocument.class).ensureIndex(index))
+                .doOnError(e -> log.error("Could not create the indexes of the products collection", e))
+                .subscribe();
+    }
+
+    /**
+     * Inserts the franchise without products, then its products with one insert.
+     */
+    @Override
+    public Mono<Franchise> insertFranchise(Franchise franchise) {
+        Franchise shell = Franchise.builder()
+                .name(franchise.getName())
+                .region(franchise.getRegion())
+                .branches(franchise.getBranches().stream()
+                        .map(branch -> Branch.builder().id(branch.getId()).name(branch.getName()).build())
+                        .toList())
+                .build();
+        return franchiseRepository.insert(shell)
+                .flatMap(inserted -> {
+                    List<ProductDocument> products = franchise.getBranches().stream()
+                            .flatMap(branch -> branch.getProducts().stream()
+                                    .map(product -> ProductDocument.of(inserted.getId(), branch.getId(), product)))
+                            .toList();
+                    return products.isEmpty()
+                            ? Mono.just(inserted)
+                            : productRepository.insert(products).then(withProducts(inserted));
+                });
+    }
+
+    @Override
+    public Mono<Product> addProduct(String franchiseId, String branchId, Product product) {
+        return ShardKey.inShard(region -> mongoTemplate.exists(
+                        query(ShardKey.franchise(franchiseId, region).and("branches.id").is(branchId)), Franchise.class))
+                .filter(Boolean::booleanValue)
+                .flatMap(exists -> productRepository.insert(ProductDocument.of(franchiseId, branchId, product)))
+                .map(ProductDocument::toProduct)
+                .flatMap(written -> touch(franchiseId, branchId, written, StockEvent.Type.ADDED));
+    }
+
+    @Override
+    public Mono<Product> removeProduct(String franchiseId, String branchId, String productId) {
+        return mongoTemplate.findAndRemove(productQuery(franchiseId, branchId, productId), ProductDocument.class)
+                .map(ProductDocument::toProduct)
+                .flatMap(removed -> touch(franchiseId, branchId, removed, StockEvent.Type.REMOVED));
+    }
+
+    @Override
+    public Mono<Product> setStock(String franchiseId, String branchId, String productId, int stock) {
+        return modifyStock(franchiseId, branchId, productQuery(franchiseId, branchId, productId), new Update().set("stock", stock));
+    }
+
+    @Override
+    public Mono<Product> incrementStock(String franchiseId, String branchId, String productId, int delta) {
+        return modifyStock(franchiseId, branchId, stockQuery(franchiseId, branchId, productId, delta), new Update().inc("stock", delta));
+    }
+
+    @Override
+    public Mono<Product> setName(String franchiseId, String branchId, String productId, String name) {
+        return modify(franchiseId, productQuery(franchiseId, branchId, productId), new Update().set("name", name));
+    }
+
+    /**
+     * Absolute stocks and increments go in one unordered bulk per round, decrements one by
+     * one (see {@link StockBulkWriter}). Each franchise with an applied update is touched once,
+     * with the stock changes it received.
+     */
+    @Override
+    public Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items) {
+        return StockBulkWriter.write(items,
+                        indexes -> bulkWrite(items, indexes),
+                        item -> mongoTemplate.updateFirst(stockQuery(item), stockUpdate(item), ProductDocument.class)
+                                .map(result -> result.getMatchedCount() > 0 ? Outcome.APPLIED : Outcome.UNMATCHED),
+                        BULK_CONCURRENCY)
+                .flatMap(write -> {
+                    List<BulkStockUpdateItem> applied = IntStream.range(0, items.size())
+                            .filter(i -> write.outcomes().get(i).status() == BulkStockWrite.Status.APPLIED)
+                            .mapToObj(items::get)
+                            .toList();
+                    return currentStocks(applied)
+                            .flatMapIterable(stocks -> applied.stream()
+                                    .collect(Collectors.groupingBy(BulkStockUpdateItem::getFranchiseId, LinkedHashMap::new,
+                                            Collectors.mapping(item -> stockChange(item, stocks), Collectors.toList())))
+                                    .entrySet())
+                            .flatMap(changes -> franchiseRepository.touch(changes.getKey(), changes.getValue()), BULK_CONCURRENCY)
+                            .then(Mono.just(write));
+                });
+    }
+
+    /**
+     * The top products of every branch in one aggregation over the products of the
+     * franchise, read alongside the franchise for the branch names and version.
+     */
+    @Override
+    public Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit) {
+        TypedAggregation<ProductDocument> aggregation = Aggregation.newAggregation(ProductDocument.class,
+                Aggregation.match(where("franchiseId").is(franchiseId)),
+                context -> new Document("$group", new Document("_id", "$branchId")
+                        .append("products", new Document("$topN", new Document("n", limit)
+                                .append("sortBy", new Document("stock", -1))
+                                .append("output", "$$ROOT")))));
+
+        return Mono.zip(franchiseRepository.findFranchise(franchiseId),
+                        mongoTemplate.aggregate(aggregation, BranchProducts.class)
+                                .collectMap(BranchProducts::branchId, BranchProducts::products))
+                .flatMapMany(found -> {
+                    Franchise franchise = found.getT1();
+                    return Flux.fromIterable(franchise.getBranches())
+                            .concatMapIterable(branch -> found.getT2().getOrDefault(branch.getId(), List.of()).stream()
+                                    .map(product -> TopProductResponse.builder()
+                                            .productId(product.getId())
+                                            .productName(product.getName())
+                                            .stock(product.getStock())
+                                            .branchId(branch.getId())
+                                            .branchName(branch.getName())
+                                            .franchiseVersion(franchise.getVersion())
+                                            .build())
+                                    .toList());
+                });
+    }
+
+    @Override
+    public Flux<ProductStockReport> findTopProducts(int limit) {
+        return productRepository.findAllByOrderByStockDesc(Limit.of(limit))
+                .buffer(REPORT_LOOKUP_BATCH)
+                .concatMap(products -> franchisesOf(products).flatMapIterable(franchises -> products.stream()
+                        .map(product -> {
+                            Franchise franchise = franchises.get(product.getFranchiseId());
+                            Branch branch = branchOf(franchise, product.getBranchId());
+                            return ProductStockReport.builder()
+                                    .franchiseId(product.getFranchiseId())
+                                    .franchiseName(franchise != null ? franchise.getName() : null)
+                                    .branchId(product.getBranchId())
+                                    .branchName(branch != null ? branch.getName() : null)
+                                    .productId(product.getId())
+                                    .productName(product.getName())
+                                    .stock(product.getStock())
+                                    .build();
+                        })
+                        .toList()));
+    }
+
+    @Override
+    public Flux<LowStockBranchReport> findLowStockBranches(int threshold) {
+        return productRepository.findByStockLessThanOrderByFranchiseIdAscBranchIdAsc(threshold)
+                .bufferUntilChanged(ProductDocument::getBranchId)
+                .buffer(REPORT_LOOKUP_BATCH)
+                .concatMap(groups -> franchisesOf(groups.stream().map(group -> group.get(0)).toList())
+                        .flatMapIterable(franchises -> groups.stream()
+                                .map(group -> {
+                                    ProductDocument first = group.get(0);
+                                    Franchise franchise = franchises.get(first.getFranchiseId());
+                                    Branch branch = branchOf(franchise, first.getBranchId());
+                                    return LowStockBranchReport.builder()
+                                            .franchiseId(first.getFranchiseId())
+                                            .franchiseName(franchise != null ? franchise.getName() : null)
+                                            .branchId(first.getBranchId())
+                                            .branchName(branch != null ? branch.getName() : null)
+                                            .products(group.stream().map(ProductDocument::toProduct).toList())
+                                            .build();
+                                })
+                                .toList()));
+    }
+
+    @Override
+    public Mono<Franchise> findFranchiseByProduct(String productId) {
+        return productRepository.findById(productId)
+                .flatMap(product -> franchiseRepository.findFranchise(product.getFranchiseId()));
+    }
+
+    @Override
+    public Mono<Franchise> withProducts(Franchise franchise) {
+        return productRepository.findByFranchiseId(franchise.getId())
+                .collectMultimap(ProductDocument::getBranchId, ProductDocument::toProduct)
+                .map(products -> Franchise.builder()
+                        .id(franchise.getId())
+                        .name(franchise.getName())
+                        .region(franchise.getRegion())
+                        .version(franchise.getVersion())
+                        .branches(franchise.getBranches().stream()
+                                .map(branch -> Branch.builder()
+                                        .id(branch.getId())
+                                        .name(branch.getName())
+                                        .products(List.copyOf(products.getOrDefault(branch.getId(), List.of())))
+                                        .build())
+                                .toList())
+                        .build());
+    }
+
+    private Mono<Product> modify(String franchiseId, Query query, Update update) {
+        return mongoTemplate.findAndModify(query, update, RETURN_NEW, ProductDocument.class)
+                .map(ProductDocument::toProduct)
+                .flatMap(product -> touch(franchiseId, product));
+    }
+
+    private Mono<Product> modifyStock(String franchiseId, String branchId, Query query, Update update) {
+        return mongoTemplate.findAndModify(query, update, RETURN_NEW, ProductDocument.class)
+                .map(ProductDocument::toProduct)
+                .flatMap(product -> touch(franchiseId, branchId, product, StockEvent.Type.UPDATED));
+    }
+
+    /**
+     * Products are written outside the franchise document, so its version is bumped after
+     * each write; otherwise cached copies and ETags derived from it would not see the change.
+     */
+    private Mono<Product> touch(String franchiseId, Product product) {
+        return franchiseRepository.touch(franchiseId).thenReturn(product);
+    }
+
+    /**
+     * Also records the stock change on the franchise: the stock-event stream watches the
+     * franchise documents only.
+     */
+    private Mono<Product> touch(String franchiseId, String branchId, Product product, StockEvent.Type type) {
+        StockEvent change = StockEvent.builder()
+                .franchiseId(franchiseId)
+                .branchId(branchId)
+                .productId(product.getId())
+                .stock(type == StockEvent.Type.REMOVED ? null : product.getStock())
+                .type(type)
+                .build();
+        return franchiseRepository.touch(franchiseId, List.of(change)).thenReturn(product);
+    }
+
+    /**
+     * The stocks of the products changed by a delta, read after the writes since bulk updates
+     * do not return them. A product changed more than once in the batch reports its final
+     * stock in each of its events.
+     */
+    private Mono<Map<String, Integer>> currentStocks(List<BulkStockUpdateItem> items) {
+        List<String> productIds = items.stream()
+                .filter(item -> item.getDelta() != null)
+                .map(BulkStockUpdateItem::getProductId)
+                .distinct()
+                .toList();
+        if (productIds.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        Query query = query(where("id").in(productIds));
+        query.fields().include("stock");
+        return mongoTemplate.find(query, ProductDocument.class)
+                .collect(HashMap::new, (stocks, product) -> stocks.put(product.getId(), product.getStock()));
+    }
+
+    private static StockEvent stockChange(BulkStockUpdateItem item, Map<String, Integer> stocks) {
+        return StockEvent.builder()
+                .franchiseId(item.getFranchiseId())
+                .branchId(item.getBranchId())
+                .productId(item.getProductId())
+                .stock(item.getStock() != null ? item.getStock() : stocks.get(item.getProductId()))
+                .type(StockEvent.Type.UPDATED)
+                .build();
+    }
+
+    private Mono<Map<Integer, Outcome>> bulkWrite(List<BulkStockUpdateItem> items, List<Integer> indexes) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class);
+        indexes.forEach(index -> bulk.updateOne(stockQuery(items.get(index)), stockUpdate(items.get(index))));
+        return StockBulkWriter.execute(bulk)
+                .flatMap(result -> StockBulkWriter.outcomes(items, indexes, result, this::existingProducts));
+    }
+
+    private Mono<Set<List<String>>> existingProducts(List<BulkStockUpdateItem> items) {
+        Query query = query(where("id").in(items.stream().map(BulkStockUpdateItem::getProductId).distinct().toList()));
+        query.fields().include("franchiseId", "branchId");
+        return mongoTemplate.find(query, ProductDocument.class)
+                .map(product -> List.of(product.getFranchiseId(), product.getBranchId(), product.getId()))
+                .collect(Collectors.toSet());
+    }
+
+    private static Query stockQuery(BulkStockUpdateItem item) {
+        return item.getDelta() != null
+                ? stockQuery(item.getFranchiseId(), item.getBranchId(), item.getProductId(), item.getDelta())
+                : productQuery(item.getFranchiseId(), item.getBranchId(), item.getProductId());
+    }
+
+    private static Update stockUpdate(BulkStockUpdateItem item) {
+        return item.getDelta() != null
+                ? new Update().inc("stock", item.getDelta())
+                : new Update().set("stock", item.getStock());
+    }
+
+    private Mono<Map<String, Franchise>> franchisesOf(Collection<ProductDocument> products) {
+        List<String> ids = products.stream().map(ProductDocument::getFranchiseId).distinct().toList();
+        return franchiseRepository.findAllById(ids)
+                .collectMap(Franchise::getId, Function.identity());
+    }
+
+    private static Branch branchOf(Franchise franchise, String branchId) {
+        return franchise != null ? franchise.findBranch(branchId).orElse(null) : null;
+    }
+
+    private static Query productQuery(String franchiseId, String branchId, String productId) {
+        return query(where("id").is(productId).and("franchiseId").is(franchiseId).and("branchId").is(branchId));
+    }
+
+    private static Query stockQuery(String franchiseId, String branchId, String productId, int delta) {
+        Query query = productQuery(franchiseId, branchId, productId);
+        if (delta < 0) {
+            query.addCriteria(Criteria.where("stock").gte(-delta));
+        }
+        return query;
+    }
+
+    /**
+     * A row of the top-products aggregation: the products of one branch, by stock descending.
+     */
+    record BranchProducts(@Id String branchId, List<ProductDocument> products) {
+    }
+}
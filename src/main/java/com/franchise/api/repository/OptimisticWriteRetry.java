@@ -0,0 +1,48 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a read-modify-write when it loses a race on the franchise {@code @Version}.
+ * <p>
+ * The attempt is subscribed again from scratch, so it must read the document itself; the
+ * mutation is then re-applied to the fresh copy. Retries back off exponentially with jitter
+ * so that contending writers spread out instead of colliding again. Each conflict is counted
+ * in {@code franchise.write.conflicts} and each write that runs out of attempts in
+ * {@code franchise.write.conflicts.exhausted}, both tagged by operation.
+ */
+@Component
+public class OptimisticWriteRetry {
+
+    private final MeterRegistry registry;
+    private final FranchiseProperties.WriteRetry config;
+
+    public OptimisticWriteRetry(MeterRegistry registry, FranchiseProperties properties) {
+        this.registry = registry;
+        this.config = properties.getWriteRetry();
+    }
+
+    public <T> Mono<T> execute(String operation, Supplier<Mono<T>> attempt) {
+        Counter conflicts = registry.counter("franchise.write.conflicts", "operation", operation);
+        Counter exhausted = registry.counter("franchise.write.conflicts.exhausted", "operation", operation);
+
+        return Mono.defer(attempt)
+                .doOnError(OptimisticLockingFailureException.class, e -> conflicts.increment())
+                .retryWhen(Retry.backoff(config.getMaxAttempts(), config.getMinBackoff())
+                        .maxBackoff(config.getMaxBackoff())
+                        .jitter(0.5)
+                        .filter(OptimisticLockingFailureException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> {
+                            exhausted.increment();
+                            return signal.failure();
+                        }));
+    }
+}
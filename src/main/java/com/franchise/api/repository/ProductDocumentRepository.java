@@ -0,0 +1,17 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.model.ProductDocument;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface ProductDocumentRepository extends ReactiveMongoRepository<ProductDocument, String> {
+
+    Flux<ProductDocument> findByFranchiseId(String franchiseId);
+
+    Flux<ProductDocument> findAllByOrderByStockDesc(Limit limit);
+
+    Flux<ProductDocument> findByStockLessThanOrderByFranchiseIdAscBranchIdAsc(int stock);
+}
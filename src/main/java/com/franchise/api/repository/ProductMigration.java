@@ -0,0 +1,96 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.ProductDocument;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves the products still embedded in franchise documents into the {@code products}
+ * collection. Products are copied first and only then removed from the franchise, so an
+ * interrupted run is simply repeated: the copy is an upsert by product id.
+ * <p>
+ * The removal is conditional on the franchise version read before the copy. If a replica
+ * still on the embedded layout writes the franchise in between, the franchise is read and
+ * copied again instead of losing that write.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("'${franchise.storage.layout:embedded}' == 'normalized' and ${franchise.storage.migrate-on-startup:false}")
+public class ProductMigration implements ApplicationRunner {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final FranchiseProperties properties;
+    private final OptimisticWriteRetry writeRetry;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Long migrated = migrate().block();
+        log.info("Moved the embedded products of {} franchises to the products collection", migrated);
+    }
+
+    public Mono<Long> migrate() {
+        Query pending = query(where("branches.products.0").exists(true));
+        pending.fields().include("id");
+        return mongoTemplate.find(pending, Franchise.class)
+                .concatMap(franchise -> writeRetry.execute("migrate-products", () -> migrate(franchise.getId())))
+                .count();
+    }
+
+    /**
+     * Copies the products of one franchise, then clears them only if the franchise was not
+     * written in between; otherwise the conflict is retried from a fresh read.
+     */
+    private Mono<Franchise> migrate(String franchiseId) {
+        int batchSize = properties.getStorage().getMigrationBatchSize();
+        return mongoTemplate.findById(franchiseId, Franchise.class)
+                .flatMap(franchise -> Flux.fromIterable(franchise.getBranches())
+                        .concatMapIterable(branch -> documents(franchise.getId(), branch))
+                        .buffer(batchSize)
+                        .concatMap(this::upsert)
+                        .then(Mono.defer(() -> mongoTemplate.updateFirst(
+                                query(where("id").is(franchise.getId()).and("version").is(franchise.getVersion())),
+                                new Update().set("branches.$[].products", List.of()).inc("version", 1),
+                                Franchise.class)))
+                        .flatMap(result -> result.getMatchedCount() > 0
+                                ? Mono.just(franchise)
+                                : Mono.error(new OptimisticLockingFailureException(
+                                        "Franchise " + franchiseId + " changed while its products were migrated"))));
+    }
+
+    private Mono<?> upsert(List<ProductDocument> products) {
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class);
+        products.forEach(product -> bulk.upsert(query(where("id").is(product.getId())), new Update()
+                .set("franchiseId", product.getFranchiseId())
+                .set("branchId", product.getBranchId())
+                .set("name", product.getName())
+                .set("stock", product.getStock())));
+        return bulk.execute();
+    }
+
+    private static List<ProductDocument> documents(String franchiseId, Branch branch) {
+        return branch.getProducts().stream()
+                .map(product -> ProductDocument.of(franchiseId, branch.getId(), product))
+                .toList();
+    }
+}
@@ -0,0 +1,65 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Where products are stored, selected with {@code franchise.storage.layout}.
+ * <p>
+ * {@link EmbeddedProductStore} keeps them inside the branches of the franchise document;
+ * {@link NormalizedProductStore} keeps one document per product in an indexed collection.
+ * Write operations complete empty when the franchise, branch or product does not match.
+ */
+public interface ProductStore {
+
+    /**
+     * Inserts a new franchise together with the products of its branches. The franchise
+     * must not have an id yet; the returned copy carries the assigned one.
+     */
+    Mono<Franchise> insertFranchise(Franchise franchise);
+
+    Mono<Product> addProduct(String franchiseId, String branchId, Product product);
+
+    Mono<Product> removeProduct(String franchiseId, String branchId, String productId);
+
+    Mono<Product> setStock(String franchiseId, String branchId, String productId, int stock);
+
+    /**
+     * Adds {@code delta} atomically; a negative delta only matches while the stock covers it.
+     */
+    Mono<Product> incrementStock(String franchiseId, String branchId, String productId, int delta);
+
+    Mono<Product> setName(String franchiseId, String branchId, String productId, String name);
+
+    /**
+     * Applies the changes and reports the outcome of each; the changes of one product never
+     * overtake each other.
+     */
+    Mono<BulkStockWrite> bulkUpdateStock(List<BulkStockUpdateItem> items);
+
+    Flux<TopProductResponse> findTopProductsByBranch(String franchiseId, int limit);
+
+    Flux<ProductStockReport> findTopProducts(int limit);
+
+    Flux<LowStockBranchReport> findLowStockBranches(int threshold);
+
+    /**
+     * The franchise holding a product, found without knowing its id. Products are not
+     * filled in; see {@link #withProducts(Franchise)}.
+     */
+    Mono<Franchise> findFranchiseByProduct(String productId);
+
+    /**
+     * Returns the franchise with the products of each branch filled in. The given instance
+     * may be shared (e.g. cached) and is never modified.
+     */
+    Mono<Franchise> withProducts(Franchise franchise);
+}
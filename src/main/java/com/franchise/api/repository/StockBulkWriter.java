@@ -0,0 +1,131 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Writes a batch of stock changes so that the outcome of every item is known. A bulk write
+ * only reports how many of its updates matched. That is enough for absolute stocks and
+ * increments, which match whenever their product exists, but a decrement may also be
+ * rejected for lack of stock, so decrements are sent one by one.
+ * <p>
+ * The bulk writes are unordered. To keep the changes of one product in input order, the
+ * batch is cut into rounds that hold at most one change per product; round {@code n} holds
+ * the {@code n}-th change of each product and waits for the previous round.
+ */
+final class StockBulkWriter {
+
+    private StockBulkWriter() {
+    }
+
+    /**
+     * @param bulk   writes the given items in one bulk and returns the outcome of each index
+     * @param single writes one decrement
+     */
+    static Mono<BulkStockWrite> write(List<BulkStockUpdateItem> items,
+                                      Function<List<Integer>, Mono<Map<Integer, Outcome>>> bulk,
+                                      Function<BulkStockUpdateItem, Mono<Outcome>> single,
+                                      int concurrency) {
+        Outcome[] outcomes = new Outcome[items.size()];
+        return Flux.fromIterable(rounds(items))
+                .concatMap(round -> {
+                    List<Integer> writes = new ArrayList<>(round.size());
+                    List<Integer> decrements = new ArrayList<>();
+                    round.forEach(index -> (isDecrement(items.get(index)) ? decrements : writes).add(index));
+
+                    Mono<Void> bulkWrite = writes.isEmpty()
+                            ? Mono.empty()
+                            : bulk.apply(writes).doOnNext(written -> written.forEach((index, outcome) -> outcomes[index] = outcome)).then();
+                    Mono<Void> decrementWrites = Flux.fromIterable(decrements)
+                            .flatMap(index -> single.apply(items.get(index)).doOnNext(outcome -> outcomes[index] = outcome), concurrency)
+                            .then();
+                    return Mono.when(bulkWrite, decrementWrites);
+                })
+                .then(Mono.fromSupplier(() -> new BulkStockWrite(Arrays.asList(outcomes))));
+    }
+
+    /**
+     * Executes a bulk of plain updates. When some of them hit a write error the bulk is
+     * unordered, so the others were still applied and counted.
+     */
+    static Mono<BulkResult> execute(ReactiveBulkOperations bulk) {
+        return bulk.execute()
+                .map(result -> new BulkResult(result.getMatchedCount(), List.of()))
+                .onErrorResume(error -> Mono.justOrEmpty(partialWrite(error))
+                        .switchIfEmpty(Mono.error(error)));
+    }
+
+    /**
+     * Names the outcome of each item of an executed bulk of absolute stocks and increments.
+     * Those match whenever their product exists, so when fewer matched than were written,
+     * {@code existing} reads back the keys (see {@link #productKey}) of the products that exist.
+     */
+    static Mono<Map<Integer, Outcome>> outcomes(List<BulkStockUpdateItem> items, List<Integer> indexes, BulkResult result,
+                                                Function<List<BulkStockUpdateItem>, Mono<Set<List<String>>>> existing) {
+        Map<Integer, Outcome> outcomes = new HashMap<>();
+        result.errors().forEach(error -> outcomes.put(indexes.get(error.getIndex()), Outcome.failed(error.getMessage())));
+        List<Integer> written = indexes.stream().filter(index -> !outcomes.containsKey(index)).toList();
+        if (result.matched() >= written.size()) {
+            written.forEach(index -> outcomes.put(index, Outcome.APPLIED));
+            return Mono.just(outcomes);
+        }
+
+        return existing.apply(written.stream().map(items::get).toList())
+                .map(products -> {
+                    written.forEach(index -> outcomes.put(index,
+                            products.contains(productKey(items.get(index))) ? Outcome.APPLIED : Outcome.UNMATCHED));
+                    return outcomes;
+                });
+    }
+
+    static boolean isDecrement(BulkStockUpdateItem item) {
+        return item.getDelta() != null && item.getDelta() < 0;
+    }
+
+    static List<String> productKey(BulkStockUpdateItem item) {
+        return List.of(item.getFranchiseId(), item.getBranchId(), item.getProductId());
+    }
+
+    private static Optional<BulkResult> partialWrite(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BulkOperationException bulkError) {
+                return Optional.of(new BulkResult(bulkError.getResult().getMatchedCount(), bulkError.getErrors()));
+            }
+            if (cause instanceof MongoBulkWriteException bulkError) {
+                return Optional.of(new BulkResult(bulkError.getWriteResult().getMatchedCount(), bulkError.getWriteErrors()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static List<List<Integer>> rounds(List<BulkStockUpdateItem> items) {
+        List<List<Integer>> rounds = new ArrayList<>();
+        Map<List<String>, Integer> changes = new HashMap<>();
+        for (int index = 0; index < items.size(); index++) {
+            int round = changes.merge(productKey(items.get(index)), 1, Integer::sum) - 1;
+            if (round == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(round).add(index);
+        }
+        return rounds;
+    }
+
+    record BulkResult(long matched, List<BulkWriteError> errors) {
+    }
+}
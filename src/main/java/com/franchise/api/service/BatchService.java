@@ -0,0 +1,237 @@
+package com.franchise.api.service;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.RequestDTOs.BatchBranch;
+import com.franchise.api.dto.RequestDTOs.BatchFranchise;
+import com.franchise.api.dto.RequestDTOs.BatchProduct;
+import com.franchise.api.dto.RequestDTOs.BatchRequest;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.exception.ResourceNotFoundException;
+import com.franchise.api.id.IdGenerator;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.FranchiseRepository;
+import com.franchise.api.repository.ProductStore;
+import com.franchise.api.sharding.ShardKey;
+import com.mongodb.MongoException;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a tree of creates and renames, possibly spanning several franchises, in one
+ * MongoDB transaction: either every change is committed or none is.
+ * <p>
+ * A session cannot run operations concurrently, so the writes of a transaction go out one
+ * after another. To keep the round trips down, a new franchise is written together with all
+ * of its branches and products by a single insert. A transaction aborted by a write conflict
+ * with another one is run again from the start.
+ */
+@Service
+@RequiredArgsConstructor
+public class BatchService {
+
+    private final FranchiseRepository franchiseRepository;
+    private final ProductStore productStore;
+    private final TransactionalOperator transactionalOperator;
+    private final IdGenerator idGenerator;
+    private final FranchiseProperties properties;
+    private final FranchiseCache franchiseCache;
+
+    /**
+     * Completes with every franchise of the batch, in request order and with the ids given
+     * to what was created. Any failure rolls the whole batch back.
+     */
+    public Flux<Franchise> applyBatch(BatchRequest request) {
+        String violation = validate(request);
+        if (violation != null) {
+            return Flux.error(new InvalidRequestException(violation));
+        }
+
+        FranchiseProperties.WriteRetry retry = properties.getWriteRetry();
+        return Flux.fromIterable(request.getFranchises())
+                .concatMap(node -> node.getId() == null ? create(node) : change(node))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .retryWhen(Retry.backoff(retry.getMaxAttempts(), retry.getMinBackoff())
+                        .maxBackoff(retry.getMaxBackoff())
+                        .jitter(0.5)
+                        .filter(BatchService::isTransient)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .flatMapMany(ids -> Flux.fromIterable(ids).concatMap(this::reload));
+    }
+
+    private Mono<String> create(BatchFranchise node) {
+        return ShardKey.inShard(region -> productStore.insertFranchise(Franchise.builder()
+                        .name(node.getName())
+                        .region(region)
+                        .branches(new ArrayList<>(branchesOf(node).stream().map(this::newBranch).toList()))
+                        .build()))
+                .map(Franchise::getId);
+    }
+
+    private Mono<String> change(BatchFranchise node) {
+        String franchiseId = node.getId();
+        Mono<Franchise> franchise = node.getName() != null
+                ? franchiseRepository.setFranchiseName(franchiseId, node.getName())
+                : franchiseRepository.findRevision(franchiseId);
+        return franchise
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
+                .thenMany(Flux.fromIterable(branchesOf(node)).concatMap(branch -> change(franchiseId, branch)))
+                .then(Mono.just(franchiseId));
+    }
+
+    /**
+     * A new branch is pushed empty and its products added through the {@link ProductStore},
+     * which decides where they are kept.
+     */
+    private Mono<Void> change(String franchiseId, BatchBranch node) {
+        if (node.getId() == null) {
+            Branch branch = Branch.builder()
+                    .id(idGenerator.nextId())
+                    .name(node.getName())
+                    .build();
+            return franchiseRepository.pushBranch(franchiseId, branch)
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
+                    .thenMany(Flux.fromIterable(productsOf(node))
+                            .concatMap(product -> productStore.addProduct(franchiseId, branch.getId(), newProduct(product))))
+                    .then();
+        }
+
+        String branchId = node.getId();
+        Mono<Branch> renamed = node.getName() != null
+                ? franchiseRepository.setBranchName(franchiseId, branchId, node.getName())
+                        .switchIfEmpty(Mono.error(new ResourceNotFoundException("Branch not found with id: " + branchId)))
+                : Mono.empty();
+        return renamed
+                .thenMany(Flux.fromIterable(productsOf(node)).concatMap(product -> change(franchiseId, branchId, product)))
+                .then();
+    }
+
+    private Mono<Product> change(String franchiseId, String branchId, BatchProduct node) {
+        if (node.getId() == null) {
+            return productStore.addProduct(franchiseId, branchId, newProduct(node))
+                    .switchIfEmpty(Mono.error(new ResourceNotFoundException("Branch not found with id: " + branchId)));
+        }
+        return productStore.setName(franchiseId, branchId, node.getId(), node.getName())
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException(
+                        "Product not found with id: " + node.getId() + " in branch: " + branchId)));
+    }
+
+    private Branch newBranch(BatchBranch node) {
+        return Branch.builder()
+                .id(idGenerator.nextId())
+                .name(node.getName())
+                .products(new ArrayList<>(productsOf(node).stream().map(this::newProduct).toList()))
+                .build();
+    }
+
+    private Product newProduct(BatchProduct node) {
+        return Product.builder()
+                .id(idGenerator.nextId())
+                .name(node.getName())
+                .stock(node.getStock())
+                .build();
+    }
+
+    /**
+     * Loads a franchise of a committed batch, dropping any copy cached before it.
+     */
+    private Mono<Franchise> reload(String franchiseId) {
+        return Mono.defer(() -> {
+            franchiseCache.invalidate(franchiseId);
+            return franchiseCache.get(franchiseId);
+        }).flatMap(productStore::withProducts);
+    }
+
+    /**
+     * Checks the whole tree up front, so a malformed batch never opens a transaction.
+     */
+    private String validate(BatchRequest request) {
+        if (request.getFranchises() == null || request.getFranchises().isEmpty()) {
+            return "At least one franchise is required";
+        }
+
+        int operations = 0;
+        for (BatchFranchise franchise : request.getFranchises()) {
+            boolean newFranchise = franchise.getId() == null;
+            if (newFranchise ? StringUtils.isBlank(franchise.getName()) : isBlankRename(franchise.getName())) {
+                return newFranchise ? "A new franchise needs a name" : "Names cannot be blank";
+            }
+            operations++;
+
+            for (BatchBranch branch : branchesOf(franchise)) {
+                boolean newBranch = branch.getId() == null;
+                if (newFranchise && !newBranch) {
+                    return "A new franchise cannot contain existing branch " + branch.getId();
+                }
+                if (newBranch ? StringUtils.isBlank(branch.getName()) : isBlankRename(branch.getName())) {
+                    return newBranch ? "A new branch needs a name" : "Names cannot be blank";
+                }
+                operations++;
+
+                for (BatchProduct product : productsOf(branch)) {
+                    String violation = validate(product, newBranch);
+                    if (violation != null) {
+                        return violation;
+                    }
+                    operations++;
+                }
+            }
+        }
+
+        int max = properties.getBatch().getMaxOperations();
+        return operations > max ? "A batch may contain at most " + max + " franchises, branches and products" : null;
+    }
+
+    private static String validate(BatchProduct product, boolean newBranch) {
+        if (product.getId() == null) {
+            if (StringUtils.isBlank(product.getName()) || product.getStock() == null) {
+                return "A new product needs a name and a stock";
+            }
+            return product.getStock() < 0 ? "Stock cannot be negative" : null;
+        }
+        if (newBranch) {
+            return "A new branch cannot contain existing product " + product.getId();
+        }
+        if (StringUtils.isBlank(product.getName())) {
+            return "Existing product " + product.getId() + " can only be renamed and needs a name";
+        }
+        return product.getStock() != null ? "The stock of existing product " + product.getId() + " cannot be changed in a batch" : null;
+    }
+
+    private static boolean isBlankRename(String name) {
+        return name != null && name.isBlank();
+    }
+
+    private static List<BatchBranch> branchesOf(BatchFranchise franchise) {
+        return franchise.getBranches() != null ? franchise.getBranches() : List.of();
+    }
+
+    private static List<BatchProduct> productsOf(BatchBranch branch) {
+        return branch.getProducts() != null ? branch.getProducts() : List.of();
+    }
+
+    /**
+     * Whether MongoDB aborted the transaction in a way that succeeds when run again, e.g. a
+     * write conflict with a concurrent transaction. Spring may wrap the driver exception.
+     */
+    private static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException mongo
+                    && mongo.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,179 +1,327 @@
 package com.franchise.api.service;
 
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.FranchiseSummary;
 import com.franchise.api.dto.RequestDTOs.*;
+import com.franchise.api.dto.StockEvent;
 import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.event.StockEventBroadcaster;
+import com.franchise.api.exception.InsufficientStockException;
+import com.franchise.api.exception.InvalidRequestException;
 import com.franchise.api.exception.ResourceNotFoundException;
+import com.franchise.api.id.IdGenerator;
 import com.franchise.api.model.Branch;
 import com.franchise.api.model.Franchise;
 import com.franchise.api.model.Product;
 import com.franchise.api.repository.FranchiseRepository;
+import com.franchise.api.repository.ProductStore;
+import com.franchise.api.sharding.ShardKey;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Comparator;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 public class FranchiseService {
 
+    private static final int MAX_TOP_PRODUCTS = 100;
+
+    private static final Set<String> PROJECTABLE_FIELDS = Set.of(
+            "name",
+            "branches",
+            "branches.id",
+            "branches.name",
+            "branches.products",
+            "branches.products.id",
+            "branches.products.name",
+            "branches.products.stock");
+
     private final FranchiseRepository franchiseRepository;
+    private final ProductStore productStore;
+    private final FranchiseProperties properties;
+    private final FranchiseCache franchiseCache;
+    private final StockEventBroadcaster stockEventBroadcaster;
+    private final IdGenerator idGenerator;
 
     public Mono<Franchise> createFranchise(CreateFranchiseRequest request) {
-        Franchise franchise = Franchise.builder()
-                .name(request.getName())
-                .build();
-        return franchiseRepository.save(franchise);
+        return ShardKey.inShard(region -> franchiseRepository.save(Franchise.builder()
+                        .name(request.getName())
+                        .region(region)
+                        .build()))
+                .doOnNext(franchiseCache::put)
+                .flatMap(productStore::withProducts);
     }
 
     public Flux<Franchise> getAllFranchises() {
-        return franchiseRepository.findAll();
+        return franchiseRepository.findAllFranchises()
+                .flatMapSequential(productStore::withProducts);
+    }
+
+    /**
+     * Keyset-paginated listing. Without a cursor, limit or projection it falls back to
+     * {@link #getAllFranchises()}, which streams the whole collection.
+     */
+    public Flux<Franchise> getFranchises(String after, Integer limit, List<String> fields) {
+        List<String> projection = fields == null ? List.of() : fields;
+        if (after == null && limit == null && projection.isEmpty()) {
+            return getAllFranchises();
+        }
+
+        FranchiseProperties.Pagination pagination = properties.getPagination();
+        if (limit != null && (limit < 1 || limit > pagination.getMaxLimit())) {
+            return Flux.error(new InvalidRequestException(
+                    "limit must be between 1 and " + pagination.getMaxLimit()));
+        }
+        List<String> unknown = projection.stream()
+                .filter(field -> !PROJECTABLE_FIELDS.contains(field))
+                .toList();
+        if (!unknown.isEmpty()) {
+            return Flux.error(new InvalidRequestException("Unknown fields: " + String.join(", ", unknown)));
+        }
+
+        Flux<Franchise> page = franchiseRepository.findPage(after, limit != null ? limit : pagination.getDefaultLimit(), projection);
+        boolean withProducts = projection.isEmpty() || projection.stream()
+                .anyMatch(field -> field.equals("branches") || field.startsWith("branches.products"));
+        return withProducts ? page.flatMapSequential(productStore::withProducts) : page;
     }
 
     public Mono<Franchise> getFranchiseById(String id) {
-        return franchiseRepository.findById(id)
+        return franchiseCache.get(id)
+                .flatMap(productStore::withProducts)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + id)));
+    }
+
+    public Mono<Franchise> getFranchiseByBranch(String branchId) {
+        return franchiseRepository.findByBranch(branchId)
+                .flatMap(productStore::withProducts)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Branch not found with id: " + branchId)));
+    }
+
+    public Mono<Franchise> getFranchiseByProduct(String productId) {
+        return productStore.findFranchiseByProduct(productId)
+                .flatMap(productStore::withProducts)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Product not found with id: " + productId)));
+    }
+
+    /**
+     * Same as {@link #getFranchiseById(String)}, but a cached copy older than {@code version}
+     * is dropped and loaded again, so the result is never behind a version just read.
+     */
+    public Mono<Franchise> getFranchiseById(String id, long version) {
+        return franchiseCache.get(id)
+                .flatMap(cached -> {
+                    if (versionOf(cached) >= version) {
+                        return Mono.just(cached);
+                    }
+                    franchiseCache.invalidate(id);
+                    return franchiseCache.get(id);
+                })
+                .flatMap(productStore::withProducts)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + id)));
+    }
+
+    /**
+     * The current version of a franchise, read with a projection and bypassing the cache.
+     * Every write bumps it, so it identifies the state of the franchise and its products.
+     */
+    public Mono<Long> getFranchiseVersion(String id) {
+        return franchiseRepository.findRevision(id)
+                .map(FranchiseService::versionOf)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + id)));
     }
 
     public Mono<Franchise> updateFranchiseName(String id, UpdateNameRequest request) {
-        return franchiseRepository.findById(id)
+        return franchiseRepository.setFranchiseName(id, request.getName())
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + id)))
-                .flatMap(franchise -> {
-                    franchise.setName(request.getName());
-                    return franchiseRepository.save(franchise);
-                });
+                .doOnNext(franchiseCache::put)
+                .flatMap(productStore::withProducts);
+    }
+
+    public Mono<FranchiseSummary> renameFranchise(String id, UpdateNameRequest request) {
+        return franchiseRepository.setFranchiseName(id, request.getName())
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + id)))
+                .doOnNext(franchiseCache::put)
+                .map(franchise -> FranchiseSummary.builder()
+                        .id(franchise.getId())
+                        .name(franchise.getName())
+                        .build());
     }
 
     public Mono<Franchise> addBranchToFranchise(String franchiseId, CreateBranchRequest request) {
-        return franchiseRepository.findById(franchiseId)
+        return addBranch(franchiseId, request)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Branch> addBranch(String franchiseId, CreateBranchRequest request) {
+        Branch branch = Branch.builder()
+                .id(idGenerator.nextId())
+                .name(request.getName())
+                .build();
+        return franchiseRepository.pushBranch(franchiseId, branch)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = Branch.builder()
-                            .id(UUID.randomUUID().toString())
-                            .name(request.getName())
-                            .build();
-                    franchise.getBranches().add(branch);
-                    return franchiseRepository.save(franchise);
-                });
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId));
     }
 
     public Mono<Franchise> updateBranchName(String franchiseId, String branchId, UpdateNameRequest request) {
-        return franchiseRepository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getId().equals(branchId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Branch not found with id: " + branchId));
-                    
-                    branch.setName(request.getName());
-                    return franchiseRepository.save(franchise);
-                });
+        return renameBranch(franchiseId, branchId, request)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Branch> renameBranch(String franchiseId, String branchId, UpdateNameRequest request) {
+        return franchiseRepository.setBranchName(franchiseId, branchId, request.getName())
+                .switchIfEmpty(missing(franchiseId, branchId, null))
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId))
+                .flatMap(branch -> withProducts(franchiseId, branch));
     }
 
     public Mono<Franchise> addProductToBranch(String franchiseId, String branchId, CreateProductRequest request) {
-        return franchiseRepository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getId().equals(branchId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Branch not found with id: " + branchId));
-                    
-                    Product product = Product.builder()
-                            .id(UUID.randomUUID().toString())
-                            .name(request.getName())
-                            .stock(request.getStock())
-                            .build();
-                    
-                    branch.getProducts().add(product);
-                    return franchiseRepository.save(franchise);
-                });
+        return addProduct(franchiseId, branchId, request)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Product> addProduct(String franchiseId, String branchId, CreateProductRequest request) {
+        Product product = Product.builder()
+                .id(idGenerator.nextId())
+                .name(request.getName())
+                .stock(request.getStock())
+                .build();
+        return productStore.addProduct(franchiseId, branchId, product)
+                .switchIfEmpty(missing(franchiseId, branchId, null))
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId));
     }
 
     public Mono<Franchise> deleteProductFromBranch(String franchiseId, String branchId, String productId) {
-        return franchiseRepository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getId().equals(branchId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Branch not found with id: " + branchId));
-                    
-                    boolean removed = branch.getProducts().removeIf(p -> p.getId().equals(productId));
-                    
-                    if (!removed) {
-                        return Mono.error(new ResourceNotFoundException("Product not found with id: " + productId));
-                    }
-                    
-                    return franchiseRepository.save(franchise);
-                });
+        return removeProduct(franchiseId, branchId, productId)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Product> removeProduct(String franchiseId, String branchId, String productId) {
+        return productStore.removeProduct(franchiseId, branchId, productId)
+                .switchIfEmpty(missing(franchiseId, branchId, productId))
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId));
     }
 
     public Mono<Franchise> updateProductStock(String franchiseId, String branchId, String productId, UpdateStockRequest request) {
-        return franchiseRepository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getId().equals(branchId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Branch not found with id: " + branchId));
-                    
-                    Product product = branch.getProducts().stream()
-                            .filter(p -> p.getId().equals(productId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + productId));
-                    
-                    product.setStock(request.getStock());
-                    return franchiseRepository.save(franchise);
-                });
+        return setProductStock(franchiseId, branchId, productId, request)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Product> setProductStock(String franchiseId, String branchId, String productId, UpdateStockRequest request) {
+        return productStore.setStock(franchiseId, branchId, productId, request.getStock())
+                .switchIfEmpty(missing(franchiseId, branchId, productId))
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId));
+    }
+
+    public Mono<Product> adjustProductStock(String franchiseId, String branchId, String productId, AdjustStockRequest request) {
+        return productStore.incrementStock(franchiseId, branchId, productId, request.getDelta())
+                .switchIfEmpty(missing(franchiseId, branchId, productId,
+                        () -> new InsufficientStockException("Insufficient stock for product with id: " + productId)))
+                .doOnNext(product -> franchiseCache.invalidate(franchiseId));
     }
 
     public Mono<Franchise> updateProductName(String franchiseId, String branchId, String productId, UpdateNameRequest request) {
-        return franchiseRepository.findById(franchiseId)
+        return renameProduct(franchiseId, branchId, productId, request)
+                .then(reload(franchiseId));
+    }
+
+    public Mono<Product> renameProduct(String franchiseId, String branchId, String productId, UpdateNameRequest request) {
+        return productStore.setName(franchiseId, branchId, productId, request.getName())
+                .switchIfEmpty(missing(franchiseId, branchId, productId))
+                .doOnNext(written -> franchiseCache.invalidate(franchiseId));
+    }
+
+    /**
+     * Live stock changes of an existing franchise, optionally narrowed to one branch.
+     */
+    public Flux<StockEvent> streamStockEvents(String franchiseId, String branchId) {
+        return franchiseRepository.existsFranchise(franchiseId)
+                .filter(Boolean::booleanValue)
                 .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMap(franchise -> {
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getId().equals(branchId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Branch not found with id: " + branchId));
-                    
-                    Product product = branch.getProducts().stream()
-                            .filter(p -> p.getId().equals(productId))
-                            .findFirst()
-                            .orElseThrow(() -> new ResourceNotFoundException("Product not found with id: " + productId));
-                    
-                    product.setName(request.getName());
-                    return franchiseRepository.save(franchise);
-                });
+                .thenMany(stockEventBroadcaster.subscribe(franchiseId, branchId));
     }
 
     public Flux<TopProductResponse> getTopProductsByBranch(String franchiseId) {
-        return franchiseRepository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId)))
-                .flatMapMany(franchise -> Flux.fromIterable(franchise.getBranches())
-                        .filter(branch -> !branch.getProducts().isEmpty())
-                        .map(branch -> {
-                            Product topProduct = branch.getProducts().stream()
-                                    .max(Comparator.comparing(Product::getStock))
-                                    .orElse(null);
-                            
-                            if (topProduct == null) {
-                                return null;
-                            }
-                            
-                            return TopProductResponse.builder()
-                                    .productId(topProduct.getId())
-                                    .productName(topProduct.getName())
-                                    .stock(topProduct.getStock())
-                                    .branchId(branch.getId())
-                                    .branchName(branch.getName())
-                                    .build();
-                        })
-                        .filter(Objects::nonNull)
-                );
+        return getTopProductsByBranch(franchiseId, 1);
+    }
+
+    public Flux<TopProductResponse> getTopProductsByBranch(String franchiseId, int limit) {
+        if (limit < 1 || limit > MAX_TOP_PRODUCTS) {
+            return Flux.error(new InvalidRequestException("limit must be between 1 and " + MAX_TOP_PRODUCTS));
+        }
+
+        // An empty result is either a franchise without products or an unknown franchise;
+        // only then is the existence check paid for.
+        return productStore.findTopProductsByBranch(franchiseId, limit)
+                .switchIfEmpty(franchiseRepository.existsFranchise(franchiseId)
+                        .flatMapMany(exists -> exists
+                                ? Flux.empty()
+                                : Flux.error(new ResourceNotFoundException("Franchise not found with id: " + franchiseId))));
+    }
+
+    /**
+     * Fills in the products of a branch written through the franchise document; only the
+     * normalized layout keeps them elsewhere.
+     */
+    private Mono<Branch> withProducts(String franchiseId, Branch branch) {
+        Franchise shell = Franchise.builder()
+                .id(franchiseId)
+                .branches(List.of(branch))
+                .build();
+        return productStore.withProducts(shell)
+                .map(franchise -> franchise.getBranches().get(0));
+    }
+
+    /**
+     * Documents written before versioning was introduced have none until their next write.
+     */
+    private static long versionOf(Franchise franchise) {
+        return franchise.getVersion() != null ? franchise.getVersion() : 0L;
+    }
+
+    /**
+     * Drops the cached copy of a franchise that was just written and loads it again.
+     */
+    private Mono<Franchise> reload(String franchiseId) {
+        return Mono.defer(() -> {
+            franchiseCache.invalidate(franchiseId);
+            return getFranchiseById(franchiseId);
+        });
+    }
+
+    /**
+     * Resolves which entity made an atomic update match nothing. Only runs on the failure
+     * path, so successful writes never pay for the extra read.
+     */
+    private <T> Mono<T> missing(String franchiseId, String branchId, String productId) {
+        return missing(franchiseId, branchId, productId,
+                () -> new ResourceNotFoundException("Product not found with id: " + productId));
+    }
+
+    /**
+     * Same as {@link #missing(String, String, String)}, but lets the caller decide what a
+     * rejected update means when every entity does exist (e.g. a failed stock guard).
+     */
+    private <T> Mono<T> missing(String franchiseId, String branchId, String productId,
+                                Supplier<RuntimeException> whenPresent) {
+        return reload(franchiseId)
+                .flatMap(franchise -> {
+                    Branch branch = franchise.findBranch(branchId).orElse(null);
+
+                    if (branch == null || productId == null) {
+                        return Mono.error(new ResourceNotFoundException("Branch not found with id: " + branchId));
+                    }
+
+                    if (branch.findProduct(productId).isEmpty()) {
+                        return Mono.error(new ResourceNotFoundException("Product not found with id: " + productId));
+                    }
+
+                    return Mono.error(whenPresent.get());
+                });
     }
 }
@@ -0,0 +1,36 @@
+package com.franchise.api.service;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.repository.ProductStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+/**
+ * Collection-wide stock reports. Each report is a single query over every franchise, so
+ * dashboards no longer fan out one request per franchise.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReportService {
+
+    private static final int MAX_TOP_PRODUCTS = 1000;
+
+    private final ProductStore productStore;
+
+    public Flux<ProductStockReport> getTopProducts(int limit) {
+        if (limit < 1 || limit > MAX_TOP_PRODUCTS) {
+            return Flux.error(new InvalidRequestException("limit must be between 1 and " + MAX_TOP_PRODUCTS));
+        }
+        return productStore.findTopProducts(limit);
+    }
+
+    public Flux<LowStockBranchReport> getLowStockBranches(int threshold) {
+        if (threshold < 1) {
+            return Flux.error(new InvalidRequestException("threshold must be greater than 0"));
+        }
+        return productStore.findLowStockBranches(threshold);
+    }
+}
@@ -0,0 +1,204 @@
+package com.franchise.api.service;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.BulkStockUpdateResult;
+import com.franchise.api.dto.BulkStockUpdateResult.Status;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.repository.BulkStockWrite;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.repository.FranchiseRepository;
+import com.franchise.api.repository.ProductStore;
+import lombok.RequiredArgsConstructor;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.function.Tuple2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Ingests large streams of stock changes. Items are consumed on demand, cut into batches
+ * of {@code franchise.bulk.batch-size} and handed to the product store, which writes them
+ * in bulk and reports the outcome of each item, so the whole payload never has to be held
+ * in memory and a batch costs few round trips. Up to
+ * {@code franchise.bulk.concurrency} batches are written at once, but a batch waits for the
+ * earlier batches that touch the same franchises, so the changes to one franchise are
+ * applied in input order.
+ */
+@Service
+@RequiredArgsConstructor
+public class StockBulkService {
+
+    private final FranchiseRepository franchiseRepository;
+    private final ProductStore productStore;
+    private final FranchiseProperties properties;
+    private final FranchiseCache franchiseCache;
+
+    public Flux<BulkStockUpdateResult> bulkUpdateStock(Flux<BulkStockUpdateItem> items) {
+        FranchiseProperties.Bulk bulk = properties.getBulk();
+        return Flux.defer(() -> {
+            Map<String, Mono<Void>> writing = new ConcurrentHashMap<>();
+            return items.index()
+                    .buffer(bulk.getBatchSize())
+                    .flatMapSequential(batch -> applyBatch(batch, writing), bulk.getConcurrency());
+        });
+    }
+
+    /**
+     * Must be called in batch order: it registers the write of the batch in {@code writing},
+     * the last write of each franchise, before any later batch looks there.
+     */
+    private Flux<BulkStockUpdateResult> applyBatch(List<Tuple2<Long, BulkStockUpdateItem>> batch,
+                                                   Map<String, Mono<Void>> writing) {
+        Map<Long, BulkStockUpdateResult> rejected = new HashMap<>();
+        List<Tuple2<Long, BulkStockUpdateItem>> valid = new ArrayList<>(batch.size());
+
+        for (Tuple2<Long, BulkStockUpdateItem> entry : batch) {
+            String violation = validate(entry.getT2());
+            if (violation != null) {
+                rejected.put(entry.getT1(), result(entry, Status.INVALID, violation));
+            } else {
+                valid.add(entry);
+            }
+        }
+
+        Mono<Map<Long, BulkStockUpdateResult>> failures = valid.isEmpty()
+                ? Mono.just(Map.of())
+                : afterEarlierWrites(valid, writing)
+                        .flatMap(write -> classify(valid, write));
+
+        return failures.flatMapMany(failed -> Flux.fromIterable(batch)
+                .map(entry -> rejected.getOrDefault(entry.getT1(),
+                        failed.getOrDefault(entry.getT1(), result(entry, Status.APPLIED, null)))));
+    }
+
+    private Mono<BulkStockWrite> afterEarlierWrites(List<Tuple2<Long, BulkStockUpdateItem>> items,
+                                                    Map<String, Mono<Void>> writing) {
+        Set<String> franchiseIds = items.stream()
+                .map(entry -> entry.getT2().getFranchiseId())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Sinks.Empty<Void> written = Sinks.empty();
+        Mono<Void> write = written.asMono();
+        List<Mono<Void>> earlier = franchiseIds.stream()
+                .map(id -> writing.put(id, write))
+                .filter(Objects::nonNull)
+                .toList();
+
+        return Mono.when(earlier)
+                .then(Mono.defer(() -> productStore.bulkUpdateStock(items.stream().map(Tuple2::getT2).toList())))
+                .doFinally(signal -> {
+                    franchiseIds.forEach(franchiseCache::invalidate);
+                    franchiseIds.forEach(id -> writing.remove(id, write));
+                    written.tryEmitEmpty();
+                });
+    }
+
+    /**
+     * Turns the outcome of each item into a result. Write errors are failures. An unmatched
+     * item changed nothing; each affected franchise is read once to tell whether it points at
+     * a missing franchise, branch or product, and otherwise a decrement was rejected for lack
+     * of stock.
+     */
+    private Mono<Map<Long, BulkStockUpdateResult>> classify(List<Tuple2<Long, BulkStockUpdateItem>> items,
+                                                             BulkStockWrite write) {
+        if (write.isComplete()) {
+            return Mono.just(Map.of());
+        }
+
+        Map<Long, BulkStockUpdateResult> failed = new HashMap<>();
+        List<Tuple2<Long, BulkStockUpdateItem>> unmatched = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            Tuple2<Long, BulkStockUpdateItem> entry = items.get(i);
+            Outcome outcome = write.outcomes().get(i);
+            if (outcome.status() == BulkStockWrite.Status.FAILED) {
+                failed.put(entry.getT1(), result(entry, Status.FAILED, outcome.message()));
+            } else if (outcome.status() == BulkStockWrite.Status.UNMATCHED) {
+                unmatched.add(entry);
+            }
+        }
+        if (unmatched.isEmpty()) {
+            return Mono.just(failed);
+        }
+
+        Set<String> franchiseIds = unmatched.stream()
+                .map(entry -> entry.getT2().getFranchiseId())
+                .collect(Collectors.toSet());
+
+        return franchiseRepository.findFranchises(franchiseIds)
+                .flatMap(productStore::withProducts)
+                .collectMap(Franchise::getId)
+                .map(franchises -> {
+                    unmatched.forEach(entry -> failed.put(entry.getT1(), unmatched(entry, franchises)));
+                    return failed;
+                });
+    }
+
+    private static BulkStockUpdateResult unmatched(Tuple2<Long, BulkStockUpdateItem> entry, Map<String, Franchise> franchises) {
+        BulkStockUpdateResult notFound = notFound(entry, franchises);
+        if (notFound != null) {
+            return notFound;
+        }
+        BulkStockUpdateItem item = entry.getT2();
+        if (item.getDelta() != null && item.getDelta() < 0) {
+            return result(entry, Status.CONFLICT, "Insufficient stock for product with id: " + item.getProductId());
+        }
+        // The product was missing when the change was written and is back now.
+        return result(entry, Status.FAILED, "Not applied: the product changed while the batch was written");
+    }
+
+    private static BulkStockUpdateResult notFound(Tuple2<Long, BulkStockUpdateItem> entry, Map<String, Franchise> franchises) {
+        BulkStockUpdateItem item = entry.getT2();
+        Franchise franchise = franchises.get(item.getFranchiseId());
+        if (franchise == null) {
+            return result(entry, Status.NOT_FOUND, "Franchise not found with id: " + item.getFranchiseId());
+        }
+
+        Branch branch = franchise.findBranch(item.getBranchId()).orElse(null);
+        if (branch == null) {
+            return result(entry, Status.NOT_FOUND, "Branch not found with id: " + item.getBranchId());
+        }
+
+        if (branch.findProduct(item.getProductId()).isEmpty()) {
+            return result(entry, Status.NOT_FOUND, "Product not found with id: " + item.getProductId());
+        }
+        return null;
+    }
+
+    private static String validate(BulkStockUpdateItem item) {
+        if (StringUtils.isAnyBlank(item.getFranchiseId(), item.getBranchId(), item.getProductId())) {
+            return "franchiseId, branchId and productId are required";
+        }
+        if ((item.getStock() == null) == (item.getDelta() == null)) {
+            return "Exactly one of stock or delta is required";
+        }
+        if (item.getStock() != null && item.getStock() < 0) {
+            return "Stock cannot be negative";
+        }
+        return null;
+    }
+
+    private static BulkStockUpdateResult result(Tuple2<Long, BulkStockUpdateItem> entry, Status status, String message) {
+        BulkStockUpdateItem item = entry.getT2();
+        return BulkStockUpdateResult.builder()
+                .index(entry.getT1())
+                .franchiseId(item.getFranchiseId())
+                .branchId(item.getBranchId())
+                .productId(item.getProductId())
+                .status(status)
+                .message(message)
+                .build();
+    }
+}
@@ -0,0 +1,65 @@
+package com.franchise.api.sharding;
+
+import com.franchise.api.model.Franchise;
+import org.springframework.data.mongodb.core.query.Criteria;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * The region of the current request, which leads the shard key {@code {region: 1, _id: 1}}
+ * of the franchises collection. It travels in the Reactor context, put there by
+ * {@link ShardKeyWebFilter}; franchise queries add it so mongos sends them to the one shard
+ * owning the region instead of broadcasting them. Without a region, e.g. when sharding is
+ * disabled or outside a request, queries are left as they are.
+ */
+public final class ShardKey {
+
+    /** Field of {@link Franchise} holding the region. */
+    public static final String FIELD = "region";
+
+    private static final String CONTEXT_KEY = ShardKey.class.getName();
+
+    private ShardKey() {
+    }
+
+    /**
+     * Puts {@code region} in the context of everything upstream; {@code null} leaves it unchanged.
+     */
+    public static Function<Context, Context> of(String region) {
+        return context -> region != null ? context.put(CONTEXT_KEY, region) : context;
+    }
+
+    /**
+     * Runs {@code operation} with the region of the current request, {@code null} when there is none.
+     */
+    public static <T> Mono<T> inShard(Function<String, Mono<T>> operation) {
+        return Mono.deferContextual(context -> operation.apply(context.getOrDefault(CONTEXT_KEY, null)));
+    }
+
+    /**
+     * Same as {@link #inShard(Function)} for operations returning many elements.
+     */
+    public static <T> Flux<T> inShardMany(Function<String, Flux<T>> operation) {
+        return Flux.deferContextual(context -> operation.apply(context.getOrDefault(CONTEXT_KEY, null)));
+    }
+
+    /**
+     * Matches the franchise with this id, narrowed to {@code region} when there is one.
+     */
+    public static Criteria franchise(String franchiseId, String region) {
+        Criteria criteria = where("id").is(franchiseId);
+        return region != null ? criteria.and(FIELD).is(region) : criteria;
+    }
+
+    /**
+     * Whether a franchise loaded without the shard key, e.g. from the cache, belongs to {@code region}.
+     */
+    public static boolean contains(String region, Franchise franchise) {
+        return region == null || region.equals(franchise.getRegion());
+    }
+}
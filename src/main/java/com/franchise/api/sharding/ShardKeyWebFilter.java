@@ -0,0 +1,43 @@
+package com.franchise.api.sharding;
+
+import com.franchise.api.config.FranchiseProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.regex.Pattern;
+
+/**
+ * Reads the region of each request from {@code franchise.sharding.header}, falling back to
+ * {@code franchise.sharding.default-region}, and hands it to the rest of the chain as the
+ * {@link ShardKey}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "franchise.sharding", name = "enabled", havingValue = "true")
+public class ShardKeyWebFilter implements WebFilter {
+
+    private static final Pattern REGION = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final FranchiseProperties.Sharding config;
+
+    public ShardKeyWebFilter(FranchiseProperties properties) {
+        this.config = properties.getSharding();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String region = exchange.getRequest().getHeaders().getFirst(config.getHeader());
+        if (region == null) {
+            region = config.getDefaultRegion();
+        } else if (!REGION.matcher(region).matches()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Invalid " + config.getHeader() + " header: " + region));
+        }
+        return chain.filter(exchange).contextWrite(ShardKey.of(region));
+    }
+}
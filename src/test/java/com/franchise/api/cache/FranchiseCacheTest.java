@@ -0,0 +1,28 @@
+package com.franchise.api.cache;
+
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FranchiseCacheTest {
+
+    @Test
+    void weigh_ShouldCountTheFranchiseItsBranchesAndTheirProducts() {
+        Franchise franchise = Franchise.builder()
+                .id("franchise-1")
+                .branches(List.of(
+                        Branch.builder().id("branch-1").products(List.of(
+                                Product.builder().id("prod-1").build(),
+                                Product.builder().id("prod-2").build())).build(),
+                        Branch.builder().id("branch-2").build()))
+                .build();
+
+        assertThat(FranchiseCache.weigh(franchise)).isEqualTo(5);
+        assertThat(FranchiseCache.weigh(Franchise.builder().id("empty").build())).isEqualTo(1);
+    }
+}
@@ -0,0 +1,261 @@
+package com.franchise.api.cache;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.event.StockEventBroadcaster;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.repository.FranchiseRepositoryCustom;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FranchiseChangeStreamWatcherTest {
+
+    private static final String FRANCHISE_ID = new ObjectId().toHexString();
+
+    private static final BsonValue FRANCHISE_KEY = new BsonObjectId(new ObjectId(FRANCHISE_ID));
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Mock
+    private FranchiseCache franchiseCache;
+
+    @Mock
+    private StockEventBroadcaster stockEventBroadcaster;
+
+    private FranchiseChangeStreamWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getCache().getChangeStream().setTokenFlushInterval(Duration.ofMillis(10));
+        watcher = new FranchiseChangeStreamWatcher(mongoTemplate, franchiseCache, stockEventBroadcaster, properties);
+
+        lenient().when(mongoTemplate.getCollectionName(Franchise.class)).thenReturn("franchises");
+        lenient().when(mongoTemplate.findById(anyString(), eq(Document.class), anyString())).thenReturn(Mono.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.stop();
+    }
+
+    @Test
+    void stockChanges_ShouldBePublishedForAddRemoveSetAndRepeatedIncrement() {
+        stream(Flux.just(
+                update(stockChange("prod-1", 5, StockEvent.Type.ADDED)),
+                update(stockChange("prod-2", null, StockEvent.Type.REMOVED)),
+                update(stockChange("prod-1", 8, StockEvent.Type.UPDATED)),
+                update(stockChange("prod-1", null, StockEvent.Type.UPDATED), "branches.0.products.0.stock", 9),
+                update(stockChange("prod-1", null, StockEvent.Type.UPDATED), "branches.0.products.0.stock", 10)));
+
+        watcher.start();
+
+        ArgumentCaptor<StockEvent> events = ArgumentCaptor.forClass(StockEvent.class);
+        verify(stockEventBroadcaster, timeout(1000).times(5)).publish(events.capture());
+        assertThat(events.getAllValues())
+                .extracting(StockEvent::getProductId, StockEvent::getStock, StockEvent::getType)
+                .containsExactly(
+                        tuple("prod-1", 5, StockEvent.Type.ADDED),
+                        tuple("prod-2", null, StockEvent.Type.REMOVED),
+                        tuple("prod-1", 8, StockEvent.Type.UPDATED),
+                        tuple("prod-1", 9, StockEvent.Type.UPDATED),
+                        tuple("prod-1", 10, StockEvent.Type.UPDATED));
+        assertThat(events.getAllValues()).allSatisfy(event -> {
+            assertThat(event.getFranchiseId()).isEqualTo(FRANCHISE_ID);
+            assertThat(event.getBranchId()).isEqualTo("branch-1");
+        });
+    }
+
+    @Test
+    void coalescedStockChanges_ShouldPublishOneEventPerChange() {
+        BsonArray changes = new BsonArray(List.of(
+                stockChange("prod-1", 4, StockEvent.Type.UPDATED),
+                stockChange("prod-2", 7, StockEvent.Type.UPDATED)));
+        stream(Flux.just(event("update", new UpdateDescription(List.of(),
+                new BsonDocument(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, changes)))));
+
+        watcher.start();
+
+        verify(stockEventBroadcaster, timeout(1000).times(2)).publish(any(StockEvent.class));
+    }
+
+    @Test
+    void everyWatchedOperation_ShouldEvictTheChangedFranchise() {
+        stream(Flux.just(
+                event("update", new UpdateDescription(List.of("name"), new BsonDocument())),
+                event("replace", null),
+                event("delete", null, new BsonString("legacy-uuid"), token("2"))));
+
+        watcher.start();
+
+        verify(franchiseCache, timeout(1000).times(2)).invalidate(FRANCHISE_ID);
+        verify(franchiseCache, timeout(1000)).invalidate("legacy-uuid");
+        verify(franchiseCache).invalidateAll();
+        verifyNoInteractions(stockEventBroadcaster);
+
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongoTemplate).changeStream(eq("franchises"), options.capture(), eq(Document.class));
+        assertThat(options.getValue().getFilter()).contains(List.of(
+                new Document("$match", new Document("operationType",
+                        new Document("$in", List.of("update", "replace", "delete")))),
+                new Document("$project", new Document("fullDocument", 0))));
+        assertThat(options.getValue().getResumeToken()).isEmpty();
+    }
+
+    @Test
+    void resumeToken_ShouldBeSavedAfterEvents() {
+        stream(Flux.just(
+                event("update", new UpdateDescription(List.of("name"), new BsonDocument()), FRANCHISE_KEY, token("1")),
+                event("update", new UpdateDescription(List.of("name"), new BsonDocument()), FRANCHISE_KEY, token("2"))));
+
+        watcher.start();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, timeout(1000)).upsert(query.capture(), update.capture(), eq("change_stream_tokens"));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("_id", "franchise-api"));
+        assertThat(update.getValue().getUpdateObject().get("$set", Document.class).get("token")).isEqualTo(token("2"));
+    }
+
+    @Test
+    void storedResumeToken_ShouldBeResumedFrom() {
+        when(mongoTemplate.findById("franchise-api", Document.class, "change_stream_tokens"))
+                .thenReturn(Mono.just(new Document("_id", "franchise-api").append("token", new Document("_data", "1"))));
+        stream(Flux.empty());
+
+        watcher.start();
+
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongoTemplate, timeout(1000)).changeStream(eq("franchises"), options.capture(), eq(Document.class));
+        assertThat(options.getValue().getResumeToken()).contains(token("1"));
+        assertThat(options.getValue().isResumeAfter()).isTrue();
+    }
+
+    @Test
+    void failedStream_ShouldBeRestartedWithAnEmptyCache() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        when(mongoTemplate.changeStream(eq("franchises"), any(ChangeStreamOptions.class), eq(Document.class)))
+                .thenAnswer(invocation -> subscriptions.incrementAndGet() == 1
+                        ? Flux.error(new IllegalStateException("connection reset"))
+                        : Flux.just(event("replace", null)).concatWith(Flux.never()));
+        lenient().when(mongoTemplate.upsert(any(), any(), anyString())).thenReturn(Mono.empty());
+
+        watcher.start();
+
+        verify(franchiseCache, timeout(5000)).invalidate(FRANCHISE_ID);
+        verify(franchiseCache, times(2)).invalidateAll();
+        assertThat(subscriptions).hasValue(2);
+    }
+
+    @Test
+    void lostHistory_ShouldDropTheTokenAndRestartFromNow() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        when(mongoTemplate.findById("franchise-api", Document.class, "change_stream_tokens"))
+                .thenAnswer(invocation -> subscriptions.get() == 0
+                        ? Mono.just(new Document("token", new Document("_data", "1")))
+                        : Mono.empty());
+        when(mongoTemplate.changeStream(eq("franchises"), any(ChangeStreamOptions.class), eq(Document.class)))
+                .thenAnswer(invocation -> subscriptions.incrementAndGet() == 1
+                        ? Flux.error(new MongoCommandException(new BsonDocument("ok", new BsonInt32(0))
+                                .append("code", new BsonInt32(286))
+                                .append("errmsg", new BsonString("resume point no longer in the oplog")), new ServerAddress()))
+                        : Flux.never());
+        when(mongoTemplate.remove(any(Query.class), eq("change_stream_tokens"))).thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+        watcher.start();
+
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(mongoTemplate, timeout(5000).times(2)).changeStream(eq("franchises"), options.capture(), eq(Document.class));
+        assertThat(options.getAllValues())
+                .extracting(ChangeStreamOptions::getResumeToken)
+                .containsExactly(Optional.of(token("1")), Optional.empty());
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(removed.capture(), eq("change_stream_tokens"));
+        assertThat(removed.getValue().getQueryObject()).isEqualTo(new Document("_id", "franchise-api"));
+    }
+
+    private void stream(Flux<ChangeStreamEvent<Document>> events) {
+        when(mongoTemplate.changeStream(eq("franchises"), any(ChangeStreamOptions.class), eq(Document.class)))
+                .thenReturn(events.concatWith(Flux.never()));
+        lenient().when(mongoTemplate.upsert(any(), any(), anyString())).thenReturn(Mono.empty());
+    }
+
+    static ChangeStreamEvent<Document> update(BsonDocument stockChange) {
+        return event("update", new UpdateDescription(List.of(),
+                new BsonDocument(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, stockChange)));
+    }
+
+    static ChangeStreamEvent<Document> update(BsonDocument stockChange, String stockPath, int stock) {
+        return event("update", new UpdateDescription(List.of(),
+                new BsonDocument(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, stockChange)
+                        .append(stockPath, new BsonInt32(stock))));
+    }
+
+    static ChangeStreamEvent<Document> event(String operationType, UpdateDescription updateDescription) {
+        return event(operationType, updateDescription, FRANCHISE_KEY, token(new ObjectId().toHexString()));
+    }
+
+    static ChangeStreamEvent<Document> event(String operationType, UpdateDescription updateDescription, BsonValue franchiseId,
+                                             BsonDocument resumeToken) {
+        ChangeStreamDocument<Document> raw = new ChangeStreamDocument<>(operationType, resumeToken,
+                new BsonDocument("db", new BsonString("franchise_db")).append("coll", new BsonString("franchises")),
+                null, null, null,
+                new BsonDocument("_id", franchiseId),
+                null, updateDescription, null, null, null, null, null);
+        return new ChangeStreamEvent<>(raw, Document.class, null);
+    }
+
+    private static BsonDocument token(String data) {
+        return new BsonDocument("_data", new BsonString(data));
+    }
+
+    private static BsonDocument stockChange(String productId, Integer stock, StockEvent.Type type) {
+        BsonDocument change = new BsonDocument("changeId", new BsonObjectId(new ObjectId()))
+                .append("branchId", new BsonString("branch-1"))
+                .append("productId", new BsonString(productId))
+                .append("type", new BsonString(type.name()));
+        if (stock != null) {
+            change.append("stock", new BsonInt32(stock));
+        }
+        return change;
+    }
+}
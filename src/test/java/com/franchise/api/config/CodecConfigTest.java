@@ -0,0 +1,102 @@
+package com.franchise.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Franchise;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CodecConfigTest {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build();
+
+    private final CodecConfig.CborEncoder encoder = new CodecConfig.CborEncoder(mapper);
+
+    @Test
+    void encode_WithMono_ShouldWriteSingleValue() {
+        Franchise franchise = Franchise.builder().id("franchise-1").name("Test Franchise").build();
+
+        StepVerifier.create(encode(Mono.just(franchise), Franchise.class))
+                .assertNext(bytes -> assertThat(read(bytes, Franchise.class)).isEqualTo(franchise))
+                .verifyComplete();
+    }
+
+    @Test
+    void encode_WithFlux_ShouldWriteOneArray() {
+        List<TopProductResponse> products = List.of(
+                TopProductResponse.builder().productId("prod-1").stock(10).build(),
+                TopProductResponse.builder().productId("prod-2").stock(5).build());
+
+        StepVerifier.create(encode(Flux.fromIterable(products), TopProductResponse.class))
+                .assertNext(bytes -> assertThat(read(bytes, TopProductResponse[].class)).containsExactlyElementsOf(products))
+                .verifyComplete();
+    }
+
+    @Test
+    void encode_WithEmptyFlux_ShouldWriteAnEmptyArray() {
+        StepVerifier.create(encode(Flux.empty(), TopProductResponse.class))
+                .assertNext(bytes -> assertThat(read(bytes, TopProductResponse[].class)).isEmpty())
+                .verifyComplete();
+    }
+
+    @Test
+    void encode_WithFlux_ShouldWriteEachElementAsItArrives() {
+        TestPublisher<TopProductResponse> products = TestPublisher.create();
+        TopProductResponse product = TopProductResponse.builder().productId("prod-1").stock(10).build();
+
+        StepVerifier.create(encoder.encode(products, DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(TopProductResponse.class), MediaType.APPLICATION_CBOR, Map.of()))
+                .assertNext(start -> assertThat(bytes(start)).containsExactly(0x9F))
+                .then(() -> products.next(product))
+                .assertNext(element -> assertThat(read(bytes(element), TopProductResponse.class)).isEqualTo(product))
+                .then(products::complete)
+                .assertNext(end -> assertThat(bytes(end)).containsExactly(0xFF))
+                .verifyComplete();
+    }
+
+    @Test
+    void canEncode_ShouldOnlyAcceptCbor() {
+        ResolvableType type = ResolvableType.forClass(Franchise.class);
+
+        assertThat(encoder.canEncode(type, MediaType.APPLICATION_CBOR)).isTrue();
+        assertThat(encoder.canEncode(type, MediaType.APPLICATION_JSON)).isFalse();
+    }
+
+    private Mono<byte[]> encode(Publisher<?> input, Class<?> elementType) {
+        return DataBufferUtils.join(encoder.encode(input, DefaultDataBufferFactory.sharedInstance,
+                        ResolvableType.forClass(elementType), MediaType.APPLICATION_CBOR, Map.of()))
+                .map(CodecConfigTest::bytes);
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+
+    private <T> T read(byte[] bytes, Class<T> type) {
+        try {
+            return mapper.readValue(bytes, type);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
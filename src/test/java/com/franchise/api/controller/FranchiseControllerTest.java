@@ -0,0 +1,203 @@
+package com.franchise.api.controller;
+
+import com.franchise.api.dto.RequestDTOs.CreateBranchRequest;
+import com.franchise.api.dto.RequestDTOs.UpdateStockRequest;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.exception.GlobalExceptionHandler;
+import com.franchise.api.idempotency.IdempotentRequests;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.service.BatchService;
+import com.franchise.api.service.FranchiseService;
+import com.franchise.api.service.StockBulkService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the conditional GETs and the {@code Prefer: return=minimal} handling over HTTP,
+ * with the services mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+class FranchiseControllerTest {
+
+    @Mock
+    private FranchiseService franchiseService;
+
+    @Mock
+    private StockBulkService stockBulkService;
+
+    @Mock
+    private BatchService batchService;
+
+    @Mock
+    private IdempotentRequests idempotentRequests;
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = WebTestClient.bindToController(new FranchiseController(franchiseService, stockBulkService, batchService,
+                        idempotentRequests))
+                .controllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void getTopProducts_WithoutIfNoneMatch_ShouldTagFromTheResultWithoutReadingTheVersion() {
+        when(franchiseService.getTopProductsByBranch("franchise-1", 1)).thenReturn(Flux.just(topProduct(7L)));
+
+        client.get().uri("/api/franchises/franchise-1/top-products")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"7\"")
+                .expectBody()
+                .jsonPath("$[0].productId").isEqualTo("prod-1")
+                .jsonPath("$[0].franchiseVersion").doesNotExist();
+
+        verify(franchiseService, never()).getFranchiseVersion(anyString());
+    }
+
+    @Test
+    void getTopProducts_WithCurrentVersion_ShouldAnswerNotModifiedWithoutTheAggregation() {
+        when(franchiseService.getFranchiseVersion("franchise-1")).thenReturn(Mono.just(7L));
+
+        client.get().uri("/api/franchises/franchise-1/top-products")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"7\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"7\"");
+
+        verify(franchiseService, never()).getTopProductsByBranch(anyString(), anyInt());
+    }
+
+    @Test
+    void getTopProducts_WithStaleVersion_ShouldReturnTheRowsTaggedWithTheirVersion() {
+        when(franchiseService.getFranchiseVersion("franchise-1")).thenReturn(Mono.just(8L));
+        // A write landed between the version read and the aggregation.
+        when(franchiseService.getTopProductsByBranch("franchise-1", 1)).thenReturn(Flux.just(topProduct(9L)));
+
+        client.get().uri("/api/franchises/franchise-1/top-products")
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"7\"")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "W/\"9\"");
+    }
+
+    @Test
+    void getFranchiseById_WithCurrentVersion_ShouldAnswerNotModifiedWithoutLoadingIt() {
+        when(franchiseService.getFranchiseVersion("franchise-1")).thenReturn(Mono.just(3L));
+
+        client.get().uri("/api/franchises/franchise-1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"3\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        verify(franchiseService, never()).getFranchiseById(anyString());
+        verify(franchiseService, never()).getFranchiseById(anyString(), anyLong());
+    }
+
+    @Test
+    void getFranchiseById_WithoutIfNoneMatch_ShouldCarryAStrongTag() {
+        when(franchiseService.getFranchiseById("franchise-1")).thenReturn(Mono.just(franchise(3L)));
+
+        client.get().uri("/api/franchises/franchise-1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"");
+
+        verify(franchiseService, never()).getFranchiseVersion(anyString());
+    }
+
+    @Test
+    void updateProductStock_PreferMinimal_ShouldReturnOnlyTheProduct() {
+        when(franchiseService.setProductStock(eq("franchise-1"), eq("branch-1"), eq("prod-1"), any(UpdateStockRequest.class)))
+                .thenReturn(Mono.just(Product.builder().id("prod-1").name("Product").stock(4).build()));
+
+        client.put().uri("/api/franchises/franchise-1/branches/branch-1/products/prod-1/stock")
+                .header("Prefer", "return=minimal")
+                .bodyValue(UpdateStockRequest.builder().stock(4).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("Preference-Applied", "return=minimal")
+                .expectHeader().valueEquals(HttpHeaders.VARY, "Prefer")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("prod-1")
+                .jsonPath("$.stock").isEqualTo(4)
+                .jsonPath("$.branches").doesNotExist();
+
+        verify(franchiseService, never()).updateProductStock(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void updateProductStock_WithoutPrefer_ShouldReturnTheFranchise() {
+        when(franchiseService.updateProductStock(eq("franchise-1"), eq("branch-1"), eq("prod-1"), any(UpdateStockRequest.class)))
+                .thenReturn(Mono.just(franchise(4L)));
+
+        client.put().uri("/api/franchises/franchise-1/branches/branch-1/products/prod-1/stock")
+                .bodyValue(UpdateStockRequest.builder().stock(4).build())
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("Preference-Applied")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("franchise-1")
+                .jsonPath("$.branches[0].products[0].id").isEqualTo("prod-1");
+    }
+
+    @Test
+    void addBranch_PreferMinimal_ShouldNotReadTheFranchise() {
+        when(franchiseService.addBranch(eq("franchise-1"), any(CreateBranchRequest.class)))
+                .thenReturn(Mono.just(Branch.builder().id("branch-2").name("New Branch").products(List.of()).build()));
+
+        client.post().uri("/api/franchises/franchise-1/branches")
+                .header("Prefer", "respond-async, return=minimal; foo=bar")
+                .bodyValue(CreateBranchRequest.builder().name("New Branch").build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals("Preference-Applied", "return=minimal")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("branch-2");
+
+        verify(franchiseService, never()).getFranchiseById(anyString());
+    }
+
+    private static TopProductResponse topProduct(Long version) {
+        return TopProductResponse.builder()
+                .productId("prod-1")
+                .productName("Product")
+                .stock(5)
+                .branchId("branch-1")
+                .branchName("Branch")
+                .franchiseVersion(version)
+                .build();
+    }
+
+    private static Franchise franchise(Long version) {
+        return Franchise.builder()
+                .id("franchise-1")
+                .name("Franchise")
+                .version(version)
+                .branches(List.of(Branch.builder()
+                        .id("branch-1")
+                        .name("Branch")
+                        .products(List.of(Product.builder().id("prod-1").name("Product").stock(4).build()))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,146 @@
+package com.franchise.api.idempotency;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.model.IdempotencyRecord;
+import com.franchise.api.model.Product;
+import com.mongodb.client.result.DeleteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotentRequestsTest {
+
+    private static final String REQUEST = "POST /franchise-1/branches/branch-1/products CreateProductRequest(name=Cola, stock=5)";
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    private IdempotentRequests idempotentRequests;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private final Product product = Product.builder().id("prod-1").name("Cola").stock(5).build();
+
+    @BeforeEach
+    void setUp() {
+        idempotentRequests = new IdempotentRequests(mongoTemplate, new FranchiseProperties());
+    }
+
+    @Test
+    void execute_ShouldRunOnceAndReplayFromMemory() {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(mongoTemplate.save(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, this::createProduct))
+                .expectNext(product)
+                .verifyComplete();
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, this::createProduct))
+                .expectNext(product)
+                .verifyComplete();
+
+        assertThat(runs).hasValue(1);
+        ArgumentCaptor<IdempotencyRecord> saved = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(mongoTemplate).save(saved.capture());
+        assertThat(saved.getValue().getStatus()).isEqualTo(IdempotencyRecord.Status.COMPLETED);
+        assertThat(saved.getValue().getResponse()).isEqualTo(product);
+        verify(mongoTemplate, times(1)).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void execute_ConcurrentDuplicates_ShouldShareOneRun() {
+        Sinks.One<Product> created = Sinks.one();
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(mongoTemplate.save(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        Mono<Product> first = idempotentRequests.execute("key-1", REQUEST, () -> {
+            runs.incrementAndGet();
+            return created.asMono();
+        });
+        Mono<Product> second = idempotentRequests.execute("key-1", REQUEST, this::createProduct);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> created.tryEmitValue(product))
+                .expectNextMatches(results -> results.getT1() == product && results.getT2() == product)
+                .verifyComplete();
+
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void execute_WhenAnotherReplicaCompletedTheKey_ShouldReplayStoredResponse() {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenReturn(Mono.error(new DuplicateKeyException("key-1")));
+        when(mongoTemplate.findById("key-1", IdempotencyRecord.class)).thenReturn(Mono.just(IdempotencyRecord.builder()
+                .id("key-1")
+                .request(REQUEST)
+                .status(IdempotencyRecord.Status.COMPLETED)
+                .response(product)
+                .expiresAt(Instant.now().plus(1, ChronoUnit.HOURS))
+                .build()));
+
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, this::createProduct))
+                .expectNext(product)
+                .verifyComplete();
+
+        assertThat(runs).hasValue(0);
+    }
+
+    @Test
+    void execute_WithKeyOfDifferentRequest_ShouldBeRefused() {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(mongoTemplate.save(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, this::createProduct))
+                .expectNext(product)
+                .verifyComplete();
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST.replace("Cola", "Water"), this::createProduct))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void execute_WhenRequestFails_ShouldReleaseKeyForRetry() {
+        when(mongoTemplate.insert(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(mongoTemplate.remove(any(Query.class), eq(IdempotencyRecord.class)))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+        when(mongoTemplate.save(any(IdempotencyRecord.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, () -> Mono.error(new IllegalStateException("timeout"))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(idempotentRequests.execute("key-1", REQUEST, this::createProduct))
+                .expectNext(product)
+                .verifyComplete();
+
+        verify(mongoTemplate).remove(any(Query.class), eq(IdempotencyRecord.class));
+        assertThat(runs).hasValue(1);
+    }
+
+    private Mono<Product> createProduct() {
+        return Mono.fromSupplier(() -> {
+            runs.incrementAndGet();
+            return product;
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package com.franchise.api.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchedulerMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final SchedulerMetrics schedulerMetrics = new SchedulerMetrics();
+
+    @BeforeEach
+    void setUp() {
+        schedulerMetrics.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedulerMetrics.destroy();
+    }
+
+    @Test
+    void bindTo_ShouldNameExecutorsBySchedulerAndReuseTheNamesOfShutDownOnes() {
+        // Reactor names this scheduler "parallel(2,\"metrics-test\")", so its tag is "parallel".
+        Scheduler first = Schedulers.newParallel("metrics-test", 2);
+        first.init();
+        assertThat(executorNames()).containsExactlyInAnyOrder("parallel-0", "parallel-1");
+        assertThat(registry.find("reactor.executor.pool.size").tag("reactor.scheduler", "parallel").gauges()).hasSize(2);
+
+        first.dispose();
+        assertThat(executorNames()).isEmpty();
+
+        Scheduler second = Schedulers.newParallel("metrics-test", 2);
+        second.init();
+        try {
+            assertThat(executorNames()).containsExactlyInAnyOrder("parallel-0", "parallel-1");
+        } finally {
+            second.dispose();
+        }
+    }
+
+    private Set<String> executorNames() {
+        return registry.getMeters().stream()
+                .map(Meter::getId)
+                .filter(id -> "parallel".equals(id.getTag("reactor.scheduler")))
+                .map(id -> id.getTag("name"))
+                .collect(Collectors.toSet());
+    }
+}
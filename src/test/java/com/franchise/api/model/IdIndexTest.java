@@ -0,0 +1,63 @@
+package com.franchise.api.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdIndexTest {
+
+    private final IdIndex<Product> index = new IdIndex<>(Product::getId);
+
+    private final List<Product> products = new ArrayList<>(List.of(product("A", 1), product("B", 2)));
+
+    @Test
+    void find_AfterRemoveAndAddOfSameSize_ShouldSeeTheNewList() {
+        assertThat(index.find(products, "A")).isPresent();
+
+        products.remove(0);
+        products.add(product("C", 3));
+
+        assertThat(index.find(products, "A")).isEmpty();
+        assertThat(index.find(products, "C")).hasValueSatisfying(product -> assertThat(product.getStock()).isEqualTo(3));
+        assertThat(index.find(products, "B")).hasValueSatisfying(product -> assertThat(product.getStock()).isEqualTo(2));
+    }
+
+    @Test
+    void find_AfterReplaceInPlace_ShouldReturnTheReplacement() {
+        assertThat(index.find(products, "B")).isPresent();
+
+        products.set(1, product("B", 20));
+        products.set(0, product("D", 4));
+
+        assertThat(index.find(products, "B")).hasValueSatisfying(product -> assertThat(product.getStock()).isEqualTo(20));
+        assertThat(index.find(products, "A")).isEmpty();
+        assertThat(index.find(products, "D")).isPresent();
+    }
+
+    @Test
+    void find_AfterClear_ShouldFindNothing() {
+        assertThat(index.find(products, "A")).isPresent();
+
+        products.clear();
+
+        assertThat(index.find(products, "A")).isEmpty();
+        assertThat(index.find(products, "B")).isEmpty();
+    }
+
+    @Test
+    void find_WhenIdOfEntityChanged_ShouldNotReturnItUnderOldId() {
+        assertThat(index.find(products, "A")).isPresent();
+
+        products.get(0).setId("E");
+
+        assertThat(index.find(products, "A")).isEmpty();
+        assertThat(index.find(products, "E")).isPresent();
+    }
+
+    private static Product product(String id, int stock) {
+        return Product.builder().id(id).name("Product " + id).stock(stock).build();
+    }
+}
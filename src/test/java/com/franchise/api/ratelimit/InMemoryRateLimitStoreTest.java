@@ -0,0 +1,64 @@
+package com.franchise.api.ratelimit;
+
+import com.franchise.api.config.FranchiseProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryRateLimitStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    private final InMemoryRateLimitStore store = new InMemoryRateLimitStore(100, now::get);
+
+    @Test
+    void acquire_ShouldAllowBurstThenReportWaitUntilNextToken() {
+        FranchiseProperties.Quota quota = quota(10, 3);
+
+        assertThat(IntStream.range(0, 3).mapToLong(i -> store.acquire("tenant-a", quota))).containsOnly(0L);
+        assertThat(store.acquire("tenant-a", quota)).isEqualTo(Duration.ofMillis(100).toNanos());
+
+        now.addAndGet(Duration.ofMillis(100).toNanos());
+        assertThat(store.acquire("tenant-a", quota)).isZero();
+        assertThat(store.acquire("tenant-a", quota)).isPositive();
+    }
+
+    @Test
+    void acquire_ShouldKeepTenantsApart() {
+        FranchiseProperties.Quota quota = quota(1, 1);
+
+        assertThat(store.acquire("tenant-a", quota)).isZero();
+        assertThat(store.acquire("tenant-a", quota)).isPositive();
+        assertThat(store.acquire("tenant-b", quota)).isZero();
+    }
+
+    @Test
+    void acquire_FromManyThreads_ShouldGrantExactlyTheBurst() {
+        FranchiseProperties.Quota quota = quota(1, 50);
+        AtomicInteger granted = new AtomicInteger();
+
+        CompletableFuture.allOf(IntStream.range(0, 200)
+                        .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                            if (store.acquire("tenant-a", quota) == 0) {
+                                granted.incrementAndGet();
+                            }
+                        }))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+
+        assertThat(granted).hasValue(50);
+    }
+
+    private static FranchiseProperties.Quota quota(double rate, int burst) {
+        FranchiseProperties.Quota quota = new FranchiseProperties.Quota();
+        quota.setRate(rate);
+        quota.setBurst(burst);
+        return quota;
+    }
+}
@@ -0,0 +1,180 @@
+package com.franchise.api.ratelimit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.franchise.api.config.FranchiseProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TenantRateLimitFilterTest {
+
+    @Mock
+    private RateLimitStore store;
+
+    @Mock
+    private ObjectProvider<RateLimitStore> storeProvider;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final AtomicInteger handled = new AtomicInteger();
+
+    private final WebFilterChain chain = exchange -> Mono.fromRunnable(handled::incrementAndGet);
+
+    private FranchiseProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FranchiseProperties();
+        properties.getRateLimit().getDefaults().setMaxInFlight(1);
+        when(storeProvider.getIfAvailable(any())).thenReturn(store);
+    }
+
+    @Test
+    void filter_WhenBucketIsEmpty_ShouldAnswer429WithRetryAfter() {
+        when(store.tryAcquire(eq("tenant-a"), any())).thenReturn(Mono.just(Duration.ofMillis(1500)));
+        MockServerWebExchange exchange = exchange("tenant-a");
+
+        StepVerifier.create(filter().filter(exchange, chain)).verifyComplete();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(handled).hasValue(0);
+        assertThat(count("rate_limited")).isEqualTo(1);
+    }
+
+    @Test
+    void filter_WhenTenantHasRequestInFlight_ShouldRejectTheNextOne() {
+        when(store.tryAcquire(anyString(), any())).thenReturn(Mono.just(Duration.ZERO));
+        Sinks.Empty<Void> pending = Sinks.empty();
+        TenantRateLimitFilter filter = filter();
+
+        filter.filter(exchange("tenant-a"), exchange -> pending.asMono()).subscribe();
+
+        MockServerWebExchange sameTenant = exchange("tenant-a");
+        StepVerifier.create(filter.filter(sameTenant, chain)).verifyComplete();
+        assertThat(sameTenant.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        StepVerifier.create(filter.filter(exchange("tenant-b"), chain)).verifyComplete();
+        assertThat(handled).hasValue(1);
+
+        pending.tryEmitEmpty();
+        StepVerifier.create(filter.filter(exchange("tenant-a"), chain)).verifyComplete();
+        assertThat(handled).hasValue(2);
+        assertThat(count("concurrency_limited")).isEqualTo(1);
+        assertThat(count("allowed")).isEqualTo(3);
+    }
+
+    @Test
+    void filter_WhenCancelledWhileStoreIsPending_ShouldReleaseTheSlot() {
+        AtomicInteger calls = new AtomicInteger();
+        when(store.tryAcquire(anyString(), any()))
+                .thenAnswer(invocation -> calls.getAndIncrement() == 0 ? Mono.never() : Mono.just(Duration.ZERO));
+        TenantRateLimitFilter filter = filter();
+
+        filter.filter(exchange("tenant-a"), chain).subscribe().dispose();
+
+        StepVerifier.create(filter.filter(exchange("tenant-a"), chain)).verifyComplete();
+        assertThat(handled).hasValue(1);
+    }
+
+    @Test
+    void filter_WhenStoreCompletesEmpty_ShouldLetRequestThroughAndReleaseTheSlot() {
+        when(store.tryAcquire(anyString(), any())).thenReturn(Mono.empty());
+        TenantRateLimitFilter filter = filter();
+
+        StepVerifier.create(filter.filter(exchange("tenant-a"), chain)).verifyComplete();
+        StepVerifier.create(filter.filter(exchange("tenant-a"), chain)).verifyComplete();
+
+        assertThat(handled).hasValue(2);
+        assertThat(count("concurrency_limited")).isZero();
+    }
+
+    @Test
+    void filter_EventStreams_ShouldNotTakeInFlightSlots() {
+        when(store.tryAcquire(anyString(), any())).thenReturn(Mono.just(Duration.ZERO));
+        TenantRateLimitFilter filter = filter();
+        MockServerWebExchange stream = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/franchises/franchise-1/stock-events").header("X-Tenant-Id", "tenant-a"));
+
+        filter.filter(stream, exchange -> Mono.never()).subscribe();
+
+        StepVerifier.create(filter.filter(exchange("tenant-a"), chain)).verifyComplete();
+        assertThat(handled).hasValue(1);
+    }
+
+    @Test
+    void filter_OtherEndpointsAskingForAnEventStream_ShouldStillBeCapped() {
+        when(store.tryAcquire(anyString(), any())).thenReturn(Mono.just(Duration.ZERO));
+        TenantRateLimitFilter filter = filter();
+        Sinks.Empty<Void> pending = Sinks.empty();
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get("/api/franchises/franchise-1")
+                .header("X-Tenant-Id", "tenant-a")
+                .accept(MediaType.TEXT_EVENT_STREAM));
+
+        filter.filter(first, exchange -> pending.asMono()).subscribe();
+
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.post("/api/franchises/franchise-1/stock-events")
+                .header("X-Tenant-Id", "tenant-a")
+                .accept(MediaType.TEXT_EVENT_STREAM));
+        StepVerifier.create(filter.filter(second, chain)).verifyComplete();
+
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(handled).hasValue(0);
+        assertThat(count("concurrency_limited")).isEqualTo(1);
+    }
+
+    @Test
+    void filter_WhenStoreFails_ShouldLetRequestThrough() {
+        when(store.tryAcquire(anyString(), any())).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        StepVerifier.create(filter().filter(exchange("tenant-a"), chain)).verifyComplete();
+
+        assertThat(handled).hasValue(1);
+    }
+
+    @Test
+    void filter_OutsideApi_ShouldNotBeLimited() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health"));
+
+        StepVerifier.create(filter().filter(exchange, chain)).verifyComplete();
+
+        assertThat(handled).hasValue(1);
+        verifyNoInteractions(store);
+    }
+
+    private TenantRateLimitFilter filter() {
+        return new TenantRateLimitFilter(properties, storeProvider, registry,
+                new ObjectMapper().registerModule(new JavaTimeModule()));
+    }
+
+    private static MockServerWebExchange exchange(String tenant) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get("/api/franchises").header("X-Tenant-Id", tenant));
+    }
+
+    private double count(String outcome) {
+        return registry.counter(TenantRateLimitFilter.METRIC, "outcome", outcome).count();
+    }
+}
@@ -0,0 +1,158 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CoalescingProductStoreTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Mock
+    private FranchiseRepository franchiseRepository;
+
+    private CoalescingProductStore productStore;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getWriteCoalescing().setWindow(Duration.ofMillis(20));
+        properties.getWriteRetry().setMinBackoff(Duration.ofMillis(1));
+        productStore = new CoalescingProductStore(new EmbeddedProductStore(franchiseRepository), mongoTemplate,
+                new OptimisticWriteRetry(new SimpleMeterRegistry(), properties), properties);
+    }
+
+    @Test
+    void concurrentWrites_ShouldBeAppliedInOrderWithOneReadAndOneUpdate() {
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class)))
+                .thenAnswer(invocation -> Mono.just(franchise(5L, 10)));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        Mono<Product> decrement = productStore.incrementStock("franchise-1", "branch-1", "prod-1", -4);
+        Mono<Product> tooLarge = productStore.incrementStock("franchise-1", "branch-1", "prod-1", -7);
+        Mono<Product> rename = productStore.setName("franchise-1", "branch-1", "prod-1", "Renamed");
+
+        StepVerifier.create(Mono.zip(decrement, tooLarge.map(Optional::of).defaultIfEmpty(Optional.empty()), rename))
+                .expectNextMatches(results -> results.getT1().getStock() == 6
+                        && results.getT2().isEmpty()
+                        && results.getT3().getStock() == 6
+                        && results.getT3().getName().equals("Renamed"))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(1)).findOne(any(Query.class), eq(Franchise.class));
+        verify(mongoTemplate, times(1)).updateFirst(query.capture(), any(Update.class), eq(Franchise.class));
+        assertEquals(5L, query.getValue().getQueryObject().get("version"));
+    }
+
+    @Test
+    void write_WhenVersionChanged_ShouldReapplyOnFreshCopy() {
+        AtomicInteger reads = new AtomicInteger();
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class)))
+                .thenAnswer(invocation -> Mono.just(reads.getAndIncrement() == 0 ? franchise(1L, 10) : franchise(2L, 3)));
+        AtomicInteger updates = new AtomicInteger();
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenAnswer(invocation -> Mono.just(updates.getAndIncrement() == 0
+                        ? UpdateResult.acknowledged(0, 0L, null)
+                        : UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(productStore.incrementStock("franchise-1", "branch-1", "prod-1", 2))
+                .expectNextMatches(product -> product.getStock() == 5)
+                .verifyComplete();
+
+        verify(mongoTemplate, times(2)).findOne(any(Query.class), eq(Franchise.class));
+    }
+
+    @Test
+    void deleteAddAndUpdateOfOneBranchInOneWindow_ShouldSeeEachOthersChanges() {
+        Franchise loaded = franchise(3L, 10);
+        loaded.getBranches().get(0).getProducts().add(Product.builder().id("prod-2").name("Other").stock(1).build());
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class))).thenReturn(Mono.just(loaded));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        Mono<Optional<Product>> removed = optional(productStore.removeProduct("franchise-1", "branch-1", "prod-1"));
+        Mono<Optional<Product>> added = optional(productStore.addProduct("franchise-1", "branch-1",
+                Product.builder().id("prod-3").name("New").stock(2).build()));
+        Mono<Optional<Product>> removedAgain = optional(productStore.incrementStock("franchise-1", "branch-1", "prod-1", 1));
+        Mono<Optional<Product>> restocked = optional(productStore.setStock("franchise-1", "branch-1", "prod-3", 9));
+        Mono<Optional<Product>> renamed = optional(productStore.setName("franchise-1", "branch-1", "prod-2", "Renamed"));
+
+        StepVerifier.create(Mono.zip(removed, added, removedAgain, restocked, renamed))
+                .assertNext(results -> {
+                    assertEquals("prod-1", results.getT1().orElseThrow().getId());
+                    assertEquals(2, results.getT2().orElseThrow().getStock());
+                    assertTrue(results.getT3().isEmpty());
+                    assertEquals(9, results.getT4().orElseThrow().getStock());
+                    assertEquals("Renamed", results.getT5().orElseThrow().getName());
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), update.capture(), eq(Franchise.class));
+        Document set = (Document) update.getValue().getUpdateObject().get("$set");
+        assertEquals(List.of(
+                        Product.builder().id("prod-2").name("Renamed").stock(1).build(),
+                        Product.builder().id("prod-3").name("New").stock(9).build()),
+                set.get("branches.0.products"));
+    }
+
+    @Test
+    void write_WhenFranchiseIsMissing_ShouldCompleteEmpty() {
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(productStore.setStock("franchise-1", "branch-1", "prod-1", 3))
+                .verifyComplete();
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Franchise.class));
+    }
+
+    private static Mono<Optional<Product>> optional(Mono<Product> product) {
+        return product.map(Optional::of).defaultIfEmpty(Optional.empty());
+    }
+
+    private static Franchise franchise(long version, int stock) {
+        List<Product> products = new ArrayList<>();
+        products.add(Product.builder().id("prod-1").name("Test Product").stock(stock).build());
+
+        List<Branch> branches = new ArrayList<>();
+        branches.add(Branch.builder().id("branch-1").name("Test Branch").products(products).build());
+
+        return Franchise.builder()
+                .id("franchise-1")
+                .name("Test Franchise")
+                .version(version)
+                .branches(branches)
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the query plans of the indexed lookups against an embedded MongoDB. Needs to
+ * download a MongoDB binary, so it only runs with {@code gradle integrationTest}.
+ */
+@Tag("integration")
+@DataMongoTest(properties = "de.flapdoodle.mongodb.embedded.version=7.0.2")
+@Import(FranchiseIndexes.class)
+@EnableConfigurationProperties(FranchiseProperties.class)
+class FranchiseIndexesTest {
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    private FranchiseIndexes franchiseIndexes;
+
+    @BeforeEach
+    void setUp() {
+        Flux<Franchise> franchises = Flux.range(0, 200)
+                .map(i -> Franchise.builder()
+                        .id("franchise-" + i)
+                        .name("Franchise " + i)
+                        .branches(List.of(Branch.builder()
+                                .id("branch-" + i)
+                                .name("Branch " + i)
+                                .products(List.of(Product.builder().id("prod-" + i).name("Product").stock(i).build()))
+                                .build()))
+                        .build());
+
+        StepVerifier.create(mongoTemplate.dropCollection(Franchise.class)
+                        .thenMany(mongoTemplate.insertAll(franchises.collectList()))
+                        .then(franchiseIndexes.createIndexes()))
+                .verifyComplete();
+    }
+
+    @Test
+    void findByBranchId_ShouldUseIndex() {
+        assertIndexScan(new Document("branches._id", "branch-42"), "branch_id");
+    }
+
+    @Test
+    void findByProductId_ShouldUseIndex() {
+        assertIndexScan(new Document("branches.products._id", "prod-42"), "product_id");
+    }
+
+    @Test
+    void findByName_ShouldUseIndex() {
+        assertIndexScan(new Document("name", "Franchise 42"), "name");
+    }
+
+    @Test
+    void findByStock_ShouldUseIndex() {
+        assertIndexScan(new Document("branches.products.stock", new Document("$lt", 5)), "product_stock");
+    }
+
+    private void assertIndexScan(Document filter, String indexName) {
+        Mono<Document> explain = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Franchise.class))
+                .flatMap(collection -> Mono.from(collection.find(filter).explain(Document.class)));
+
+        StepVerifier.create(explain)
+                .assertNext(plan -> {
+                    String winningPlan = plan.get("queryPlanner", Document.class).get("winningPlan", Document.class).toJson();
+                    assertThat(winningPlan).contains("IXSCAN").contains(indexName).doesNotContain("COLLSCAN");
+                })
+                .verifyComplete();
+    }
+}
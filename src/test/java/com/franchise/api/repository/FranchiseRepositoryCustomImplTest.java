@@ -0,0 +1,285 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.sharding.ShardKey;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the shape of the queries sent for sharded routing: with a region in the context every
+ * franchise query carries the shard key prefix, so mongos can target a single shard.
+ */
+@ExtendWith(MockitoExtension.class)
+class FranchiseRepositoryCustomImplTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    private FranchiseRepositoryCustomImpl repository;
+
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        repository = new FranchiseRepositoryCustomImpl(mongoTemplate);
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+    }
+
+    @Test
+    void findFranchise_WithRegion_ShouldIncludeShardKey() {
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(repository.findFranchise("franchise-1").contextWrite(ShardKey.of("eu")))
+                .verifyComplete();
+
+        assertThat(capturedFindOne()).isEqualTo(new Document("id", "franchise-1").append("region", "eu"));
+    }
+
+    @Test
+    void findFranchise_WithoutRegion_ShouldQueryByIdOnly() {
+        when(mongoTemplate.findOne(any(Query.class), eq(Franchise.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(repository.findFranchise("franchise-1"))
+                .verifyComplete();
+
+        assertThat(capturedFindOne()).isEqualTo(new Document("id", "franchise-1"));
+    }
+
+    @Test
+    void findAllFranchises_WithRegion_ShouldOnlyReadThatRegion() {
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(repository.findAllFranchises().contextWrite(ShardKey.of("eu")))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(Franchise.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("region", "eu"));
+    }
+
+    @Test
+    void bulkUpdateStock_ShouldSendDecrementsAloneAndTheRestInUnorderedBulksPerRound() {
+        ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Franchise.class)).thenReturn(bulk);
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(1);
+        when(bulk.execute()).thenReturn(Mono.just(result));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.just(franchise()));
+
+        List<BulkStockUpdateItem> items = List.of(
+                BulkStockUpdateItem.builder().franchiseId("franchise-1").branchId("branch-1").productId("prod-1").delta(-1).build(),
+                BulkStockUpdateItem.builder().franchiseId("franchise-1").branchId("branch-1").productId("prod-2").stock(3).build(),
+                BulkStockUpdateItem.builder().franchiseId("franchise-1").branchId("branch-1").productId("missing").stock(4).build(),
+                BulkStockUpdateItem.builder().franchiseId("franchise-1").branchId("branch-1").productId("prod-2").delta(2).build());
+
+        // The first bulk matched one of two updates: the read-back names the missing product.
+        StepVerifier.create(repository.bulkUpdateStock(items))
+                .expectNext(new BulkStockWrite(List.of(Outcome.UNMATCHED, Outcome.APPLIED, Outcome.UNMATCHED, Outcome.APPLIED)))
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(bulk);
+        inOrder.verify(bulk, times(2)).updateOne(any(Query.class), any(Update.class));
+        inOrder.verify(bulk).execute();
+        inOrder.verify(bulk).updateOne(any(Query.class), argThat(update ->
+                update.getUpdateObject().get("$inc", Document.class).containsKey("branches.$[b].products.$[p].stock")));
+        inOrder.verify(bulk).execute();
+        verify(bulk, never()).upsert(any(Query.class), any(Update.class));
+
+        ArgumentCaptor<Query> decrement = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateFirst(decrement.capture(), any(Update.class), eq(Franchise.class));
+        assertThat(decrement.getValue().getQueryObject().toJson()).contains("\"$gte\": 1");
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Franchise.class));
+    }
+
+    @Test
+    void touch_WithStockChanges_ShouldBumpTheVersionAndRecordThem() {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        StockEvent first = StockEvent.builder().branchId("branch-1").productId("prod-1").stock(4).type(StockEvent.Type.UPDATED).build();
+        StockEvent second = StockEvent.builder().branchId("branch-1").productId("prod-2").type(StockEvent.Type.REMOVED).build();
+
+        StepVerifier.create(repository.touch("franchise-1", List.of(first)).then(repository.touch("franchise-1", List.of(first, second))))
+                .expectNext(true)
+                .verifyComplete();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), update.capture(), eq(Franchise.class));
+        Document single = update.getAllValues().get(0).getUpdateObject();
+        assertThat(single.get("$inc")).isEqualTo(new Document("version", 1));
+        assertThat(single.get("$set", Document.class).get(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, Document.class))
+                .containsEntry("productId", "prod-1")
+                .containsEntry("stock", 4)
+                .containsEntry("type", "UPDATED");
+        assertThat(update.getAllValues().get(1).getUpdateObject().get("$set", Document.class)
+                .getList(FranchiseRepositoryCustom.LAST_STOCK_CHANGE, Document.class))
+                .extracting(change -> change.get("productId"), change -> change.get("type"))
+                .containsExactly(tuple("prod-1", "UPDATED"), tuple("prod-2", "REMOVED"));
+    }
+
+    @Test
+    void incrementProductStock_Repeated_ShouldWriteADifferentStockChangeEachTime() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Franchise.class)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(repository.incrementProductStock("franchise-1", "branch-1", "prod-1", 1)).verifyComplete();
+        StepVerifier.create(repository.incrementProductStock("franchise-1", "branch-1", "prod-1", 1)).verifyComplete();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class),
+                eq(Franchise.class));
+        Object first = ((Document) update.getAllValues().get(0).getUpdateObject().get("$set"))
+                .get(FranchiseRepositoryCustom.LAST_STOCK_CHANGE);
+        Object second = ((Document) update.getAllValues().get(1).getUpdateObject().get("$set"))
+                .get(FranchiseRepositoryCustom.LAST_STOCK_CHANGE);
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    void setProductStock_WithRegion_ShouldIncludeShardKey() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Franchise.class)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(repository.setProductStock("franchise-1", "branch-1", "prod-1", 5).contextWrite(ShardKey.of("eu")))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(Franchise.class));
+        assertThat(query.getValue().getQueryObject())
+                .containsEntry("id", "franchise-1")
+                .containsEntry("region", "eu")
+                .containsKey("branches");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void findTopProductsByBranch_WithRegion_ShouldMatchShardKeyFirst() {
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(TopProductResponse.class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(repository.findTopProductsByBranch("franchise-1", 3).contextWrite(ShardKey.of("eu")))
+                .verifyComplete();
+
+        ArgumentCaptor<TypedAggregation<Franchise>> aggregation = ArgumentCaptor.forClass(TypedAggregation.class);
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(TopProductResponse.class));
+        assertThat(aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0))
+                .isEqualTo(new Document("$match", new Document("id", "franchise-1").append("region", "eu")));
+    }
+
+    @Test
+    void setProductStock_WithObjectIds_ShouldMatchThemAsObjectIds() {
+        assertIdsMatchAsStored(new ObjectId().toHexString(), new ObjectId().toHexString(), ObjectId.class);
+    }
+
+    @Test
+    void setProductStock_WithUuids_ShouldMatchThemAsStrings() {
+        assertIdsMatchAsStored(UUID.randomUUID().toString(), UUID.randomUUID().toString(), String.class);
+    }
+
+    @Test
+    void setProductStock_WithHexIdsThatAreNotObjectIds_ShouldKeepThemAsStrings() {
+        assertIdsMatchAsStored("0123456789abcdef", "0123456789abcdef0123456789", String.class);
+    }
+
+    /**
+     * Writes a franchise with these ids through the mapping layer and checks that they read
+     * back unchanged, and that both the array filters and the mapped $elemMatch query of a
+     * stock update carry them with the type they were stored with.
+     */
+    private void assertIdsMatchAsStored(String branchId, String productId, Class<?> storedType) {
+        Franchise franchise = Franchise.builder()
+                .id("franchise-1")
+                .name("Franchise")
+                .branches(List.of(Branch.builder()
+                        .id(branchId)
+                        .name("Branch")
+                        .products(List.of(Product.builder().id(productId).name("Product").stock(1).build()))
+                        .build()))
+                .build();
+        Document stored = new Document();
+        converter.write(franchise, stored);
+        Document storedBranch = stored.getList("branches", Document.class).get(0);
+        Object storedBranchId = storedBranch.get("_id");
+        Object storedProductId = storedBranch.getList("products", Document.class).get(0).get("_id");
+        assertThat(storedBranchId).isInstanceOf(storedType);
+        assertThat(storedProductId).isInstanceOf(storedType);
+
+        Branch read = converter.read(Franchise.class, stored).getBranches().get(0);
+        assertThat(read.getId()).isEqualTo(branchId);
+        assertThat(read.getProducts().get(0).getId()).isEqualTo(productId);
+
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(Franchise.class)))
+                .thenReturn(Mono.empty());
+        StepVerifier.create(repository.setProductStock("franchise-1", branchId, productId, 5))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(Franchise.class));
+        assertThat(update.getValue().getArrayFilters())
+                .extracting(Update.ArrayFilter::asDocument)
+                .containsExactly(new Document("b._id", storedBranchId), new Document("p._id", storedProductId));
+
+        Document mapped = new QueryMapper(converter)
+                .getMappedObject(query.getValue().getQueryObject(), converter.getMappingContext().getPersistentEntity(Franchise.class));
+        Document elemMatch = mapped.get("branches", Document.class).get("$elemMatch", Document.class);
+        assertThat(elemMatch.get("_id")).isEqualTo(storedBranchId);
+        assertThat(elemMatch.get("products._id")).isEqualTo(storedProductId);
+    }
+
+    private Document capturedFindOne() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(query.capture(), eq(Franchise.class));
+        return query.getValue().getQueryObject();
+    }
+
+    private static Franchise franchise() {
+        return Franchise.builder()
+                .id("franchise-1")
+                .branches(List.of(Branch.builder().id("branch-1").products(List.of(
+                        Product.builder().id("prod-1").build(),
+                        Product.builder().id("prod-2").build())).build()))
+                .build();
+    }
+}
@@ -0,0 +1,315 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.model.ProductDocument;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.sharding.ShardKey;
+import com.franchise.api.model.Branch;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Captor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the queries and updates the normalized layout sends to the {@code products}
+ * collection, and that every applied write bumps the version of its franchise, recording
+ * the stock changes for the stock-event stream.
+ */
+@ExtendWith(MockitoExtension.class)
+class NormalizedProductStoreTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Mock
+    private ProductDocumentRepository productRepository;
+
+    @Mock
+    private FranchiseRepository franchiseRepository;
+
+    @Captor
+    private ArgumentCaptor<List<StockEvent>> changes;
+
+    private NormalizedProductStore productStore;
+
+    @BeforeEach
+    void setUp() {
+        productStore = new NormalizedProductStore(mongoTemplate, productRepository, franchiseRepository);
+    }
+
+    @Test
+    void addProduct_ShouldInsertADocumentIntoAnExistingBranch() {
+        when(mongoTemplate.exists(any(Query.class), eq(Franchise.class))).thenReturn(Mono.just(true));
+        when(productRepository.insert(any(ProductDocument.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(franchiseRepository.touch(eq("franchise-1"), anyList())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productStore.addProduct("franchise-1", "branch-1", product("prod-1", "Product", 5))
+                        .contextWrite(ShardKey.of("eu")))
+                .expectNext(product("prod-1", "Product", 5))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> exists = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).exists(exists.capture(), eq(Franchise.class));
+        assertThat(exists.getValue().getQueryObject()).isEqualTo(new Document("id", "franchise-1")
+                .append("region", "eu")
+                .append("branches.id", "branch-1"));
+        verify(productRepository).insert(new ProductDocument("prod-1", "franchise-1", "branch-1", "Product", 5));
+    }
+
+    @Test
+    void addProduct_WhenBranchIsMissing_ShouldWriteNothing() {
+        when(mongoTemplate.exists(any(Query.class), eq(Franchise.class))).thenReturn(Mono.just(false));
+
+        StepVerifier.create(productStore.addProduct("franchise-1", "missing", product("prod-1", "Product", 5)))
+                .verifyComplete();
+
+        verify(productRepository, never()).insert(any(ProductDocument.class));
+        verify(franchiseRepository, never()).touch(anyString(), anyList());
+    }
+
+    @Test
+    void removeProduct_ShouldRemoveTheDocumentOfThatBranch() {
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.just(new ProductDocument("prod-1", "franchise-1", "branch-1", "Product", 5)));
+        when(franchiseRepository.touch(eq("franchise-1"), anyList())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productStore.removeProduct("franchise-1", "branch-1", "prod-1"))
+                .expectNext(product("prod-1", "Product", 5))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndRemove(query.capture(), eq(ProductDocument.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(productFilter("prod-1"));
+    }
+
+    @Test
+    void setName_ShouldSetOnlyTheName() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.just(new ProductDocument("prod-1", "franchise-1", "branch-1", "Renamed", 5)));
+        when(franchiseRepository.touch("franchise-1")).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productStore.setName("franchise-1", "branch-1", "prod-1", "Renamed"))
+                .expectNext(product("prod-1", "Renamed", 5))
+                .verifyComplete();
+
+        assertThat(capturedModify().getUpdateObject()).isEqualTo(new Document("$set", new Document("name", "Renamed")));
+    }
+
+    @Test
+    void incrementStock_WithNegativeDelta_ShouldGuardTheStock() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.just(new ProductDocument("prod-1", "franchise-1", "branch-1", "Product", 1)));
+        when(franchiseRepository.touch(eq("franchise-1"), anyList())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productStore.incrementStock("franchise-1", "branch-1", "prod-1", -4))
+                .expectNext(product("prod-1", "Product", 1))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(ProductDocument.class));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(productFilter("prod-1").append("stock", new Document("$gte", 4)));
+        assertThat(update.getValue().getUpdateObject()).isEqualTo(new Document("$inc", new Document("stock", -4)));
+    }
+
+    @Test
+    void incrementStock_WhenGuardRejects_ShouldNotTouchTheFranchise() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(productStore.incrementStock("franchise-1", "branch-1", "prod-1", -50))
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).touch(anyString(), anyList());
+    }
+
+    @Test
+    void setStock_ShouldNotGuardTheStock() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.just(new ProductDocument("prod-1", "franchise-1", "branch-1", "Product", 0)));
+        when(franchiseRepository.touch(eq("franchise-1"), anyList())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(productStore.setStock("franchise-1", "branch-1", "prod-1", 0))
+                .expectNext(product("prod-1", "Product", 0))
+                .verifyComplete();
+
+        assertThat(capturedModify().getUpdateObject()).isEqualTo(new Document("$set", new Document("stock", 0)));
+        verify(franchiseRepository).touch(eq("franchise-1"), changes.capture());
+        assertThat(changes.getValue()).containsExactly(StockEvent.builder()
+                .franchiseId("franchise-1").branchId("branch-1").productId("prod-1").stock(0).type(StockEvent.Type.UPDATED).build());
+    }
+
+    @Test
+    void bulkUpdateStock_ShouldSendOneUnorderedBulkPerRoundAndDecrementsAlone() {
+        ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class)).thenReturn(bulk);
+        AtomicInteger executions = new AtomicInteger();
+        when(bulk.execute()).thenAnswer(invocation -> Mono.just(bulkResult(executions.getAndIncrement() == 0 ? 0 : 1)));
+        // The first read names the existing products, the second reads the decremented stock.
+        AtomicInteger reads = new AtomicInteger();
+        when(mongoTemplate.find(any(Query.class), eq(ProductDocument.class))).thenAnswer(invocation -> reads.getAndIncrement() == 0
+                ? Flux.empty()
+                : Flux.just(new ProductDocument("prod-1", null, null, null, 6)));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ProductDocument.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(franchiseRepository.touch(eq("franchise-1"), anyList())).thenReturn(Mono.just(true));
+
+        List<BulkStockUpdateItem> items = List.of(
+                item("prod-1", null, -1),
+                item("missing", 3, null),
+                item("prod-1", 7, null));
+
+        StepVerifier.create(productStore.bulkUpdateStock(items))
+                .expectNext(new BulkStockWrite(List.of(Outcome.APPLIED, Outcome.UNMATCHED, Outcome.APPLIED)))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> decrement = ArgumentCaptor.forClass(Query.class);
+        InOrder inOrder = inOrder(mongoTemplate, bulk);
+        inOrder.verify(mongoTemplate).updateFirst(decrement.capture(),
+                argThat(update -> update.getUpdateObject().equals(new Document("$inc", new Document("stock", -1)))),
+                eq(ProductDocument.class));
+        inOrder.verify(bulk).updateOne(any(Query.class),
+                argThat(update -> update.getUpdateObject().equals(new Document("$set", new Document("stock", 7)))));
+        assertThat(decrement.getValue().getQueryObject()).isEqualTo(productFilter("prod-1").append("stock", new Document("$gte", 1)));
+        verify(mongoTemplate, times(2)).bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class);
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(ProductDocument.class));
+        verify(franchiseRepository, times(1)).touch(eq("franchise-1"), changes.capture());
+        assertThat(changes.getValue())
+                .extracting(StockEvent::getProductId, StockEvent::getStock)
+                .containsExactly(tuple("prod-1", 6), tuple("prod-1", 7));
+    }
+
+    @Test
+    void bulkUpdateStock_WhenNothingMatches_ShouldNotTouchAnyFranchise() {
+        ReactiveBulkOperations bulk = mock(ReactiveBulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class)).thenReturn(bulk);
+        BulkWriteResult result = bulkResult(0);
+        when(bulk.execute()).thenReturn(Mono.just(result));
+        when(mongoTemplate.find(any(Query.class), eq(ProductDocument.class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(productStore.bulkUpdateStock(List.of(item("missing", 3, null))))
+                .expectNext(new BulkStockWrite(List.of(Outcome.UNMATCHED)))
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).touch(anyString(), anyList());
+    }
+
+    @Test
+    void findTopProductsByBranch_ShouldGroupTheProductsOfTheFranchiseInOneAggregation() {
+        Franchise franchise = Franchise.builder()
+                .id("franchise-1")
+                .version(4L)
+                .branches(List.of(
+                        Branch.builder().id("branch-1").name("Branch 1").build(),
+                        Branch.builder().id("branch-2").name("Branch 2").build()))
+                .build();
+        when(franchiseRepository.findFranchise("franchise-1")).thenReturn(Mono.just(franchise));
+        when(mongoTemplate.aggregate(ArgumentMatchers.<TypedAggregation<ProductDocument>>any(), eq(NormalizedProductStore.BranchProducts.class)))
+                .thenReturn(Flux.just(new NormalizedProductStore.BranchProducts("branch-2",
+                        List.of(new ProductDocument("prod-2", "franchise-1", "branch-2", "Product 2", 9)))));
+
+        StepVerifier.create(productStore.findTopProductsByBranch("franchise-1", 1))
+                .assertNext(top -> {
+                    assertThat(top.getBranchName()).isEqualTo("Branch 2");
+                    assertThat(top.getProductId()).isEqualTo("prod-2");
+                    assertThat(top.getStock()).isEqualTo(9);
+                    assertThat(top.getFranchiseVersion()).isEqualTo(4L);
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<TypedAggregation<ProductDocument>> aggregation = ArgumentCaptor.captor();
+        verify(mongoTemplate).aggregate(aggregation.capture(), eq(NormalizedProductStore.BranchProducts.class));
+        List<Document> pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertThat(pipeline).hasSize(2);
+        assertThat(pipeline.get(0)).isEqualTo(new Document("$match", new Document("franchiseId", "franchise-1")));
+        assertThat(pipeline.get(1).get("$group", Document.class).get("products", Document.class).get("$topN", Document.class))
+                .isEqualTo(new Document("n", 1).append("sortBy", new Document("stock", -1)).append("output", "$$ROOT"));
+    }
+
+    @Test
+    void branchProducts_ShouldBeReadFromTheGroupedDocuments() {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+        ObjectId productId = new ObjectId();
+
+        NormalizedProductStore.BranchProducts row = converter.read(NormalizedProductStore.BranchProducts.class,
+                new Document("_id", "branch-1").append("products", List.of(new Document("_id", productId)
+                        .append("franchiseId", "franchise-1").append("branchId", "branch-1").append("name", "Product").append("stock", 3))));
+
+        assertThat(row.branchId()).isEqualTo("branch-1");
+        assertThat(row.products()).containsExactly(
+                new ProductDocument(productId.toHexString(), "franchise-1", "branch-1", "Product", 3));
+    }
+
+    private Update capturedModify() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(ProductDocument.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(productFilter("prod-1"));
+        return update.getValue();
+    }
+
+    private static BulkWriteResult bulkResult(int matched) {
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(matched);
+        return result;
+    }
+
+    private static Document productFilter(String productId) {
+        return new Document("id", productId).append("franchiseId", "franchise-1").append("branchId", "branch-1");
+    }
+
+    private static Product product(String id, String name, int stock) {
+        return Product.builder().id(id).name(name).stock(stock).build();
+    }
+
+    private static BulkStockUpdateItem item(String productId, Integer stock, Integer delta) {
+        return BulkStockUpdateItem.builder()
+                .franchiseId("franchise-1")
+                .branchId("branch-1")
+                .productId(productId)
+                .stock(stock)
+                .delta(delta)
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OptimisticWriteRetryTest {
+
+    private SimpleMeterRegistry registry;
+
+    private OptimisticWriteRetry writeRetry;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getWriteRetry().setMaxAttempts(2);
+        properties.getWriteRetry().setMinBackoff(Duration.ofMillis(1));
+        properties.getWriteRetry().setMaxBackoff(Duration.ofMillis(2));
+        registry = new SimpleMeterRegistry();
+        writeRetry = new OptimisticWriteRetry(registry, properties);
+    }
+
+    @Test
+    void execute_WhenConflictIsTransient_ShouldReapplyFromScratch() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(writeRetry.execute("test", () -> attempts.incrementAndGet() < 2
+                        ? Mono.error(new OptimisticLockingFailureException("conflict"))
+                        : Mono.just("written")))
+                .expectNext("written")
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, registry.counter("franchise.write.conflicts", "operation", "test").count());
+        assertEquals(0.0, registry.counter("franchise.write.conflicts.exhausted", "operation", "test").count());
+    }
+
+    @Test
+    void execute_WhenConflictPersists_ShouldGiveUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(writeRetry.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(new OptimisticLockingFailureException("conflict"));
+                }))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+
+        assertEquals(3, attempts.get());
+        assertEquals(1.0, registry.counter("franchise.write.conflicts.exhausted", "operation", "test").count());
+    }
+
+    @Test
+    void execute_WhenErrorIsNotAConflict_ShouldNotRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        StepVerifier.create(writeRetry.execute("test", () -> {
+                    attempts.incrementAndGet();
+                    return Mono.error(new IllegalStateException("boom"));
+                }))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(1, attempts.get());
+    }
+}
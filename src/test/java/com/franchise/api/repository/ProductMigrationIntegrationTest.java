@@ -0,0 +1,94 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.model.ProductDocument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Runs the migration to the normalized layout against an embedded MongoDB, including a
+ * rerun over products already copied by an interrupted run. Needs to download a MongoDB
+ * binary, so it only runs with {@code gradle integrationTest}.
+ */
+@Tag("integration")
+@DataMongoTest(properties = "de.flapdoodle.mongodb.embedded.version=7.0.2")
+class ProductMigrationIntegrationTest {
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    private ProductMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getStorage().setMigrationBatchSize(2);
+        migration = new ProductMigration(mongoTemplate, properties, new OptimisticWriteRetry(new SimpleMeterRegistry(), properties));
+
+        Franchise franchise = Franchise.builder()
+                .id("franchise-1")
+                .name("Franchise")
+                .branches(List.of(
+                        Branch.builder().id("branch-1").name("Branch 1").products(List.of(
+                                Product.builder().id("prod-1").name("Product 1").stock(1).build(),
+                                Product.builder().id("prod-2").name("Product 2").stock(2).build())).build(),
+                        Branch.builder().id("branch-2").name("Branch 2").products(List.of(
+                                Product.builder().id("prod-3").name("Product 3").stock(3).build())).build()))
+                .build();
+        // Left behind by an interrupted run, with a stock that has changed since.
+        ProductDocument stale = new ProductDocument("prod-1", "franchise-1", "branch-1", "Product 1", 40);
+
+        StepVerifier.create(mongoTemplate.dropCollection(Franchise.class)
+                        .then(mongoTemplate.dropCollection(ProductDocument.class))
+                        .then(mongoTemplate.insert(franchise))
+                        .then(mongoTemplate.insert(stale)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void migrate_ShouldMoveEveryProductOnceAndBeSafeToRerun() {
+        StepVerifier.create(migration.migrate())
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(mongoTemplate.find(new Query(), ProductDocument.class).collectList())
+                .assertNext(products -> assertThat(products)
+                        .extracting(ProductDocument::getId, ProductDocument::getBranchId, ProductDocument::getStock)
+                        .containsExactlyInAnyOrder(
+                                tuple("prod-1", "branch-1", 1),
+                                tuple("prod-2", "branch-1", 2),
+                                tuple("prod-3", "branch-2", 3)))
+                .verifyComplete();
+
+        StepVerifier.create(mongoTemplate.findById("franchise-1", Franchise.class))
+                .assertNext(franchise -> {
+                    assertThat(franchise.getBranches()).allSatisfy(branch -> assertThat(branch.getProducts()).isEmpty());
+                    assertThat(franchise.getVersion()).isEqualTo(1L);
+                })
+                .verifyComplete();
+
+        StepVerifier.create(migration.migrate())
+                .expectNext(0L)
+                .verifyComplete();
+
+        StepVerifier.create(mongoTemplate.count(new Query(), ProductDocument.class))
+                .expectNext(3L)
+                .verifyComplete();
+    }
+}
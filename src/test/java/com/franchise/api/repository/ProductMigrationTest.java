@@ -0,0 +1,189 @@
+package com.franchise.api.repository;
+
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.model.ProductDocument;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks the writes of the migration to the normalized layout: products are upserted by id
+ * in batches and only then cleared from the franchise, conditionally on its version.
+ */
+@ExtendWith(MockitoExtension.class)
+class ProductMigrationTest {
+
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Mock
+    private ReactiveBulkOperations bulk;
+
+    @Mock
+    private BulkWriteResult bulkResult;
+
+    private ProductMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getStorage().setMigrationBatchSize(2);
+        properties.getWriteRetry().setMinBackoff(Duration.ofMillis(1));
+        migration = new ProductMigration(mongoTemplate, properties, new OptimisticWriteRetry(new SimpleMeterRegistry(), properties));
+    }
+
+    @Test
+    void migrate_ShouldUpsertProductsInBatchesThenClearThem() {
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.just(Franchise.builder().id("franchise-1").build()));
+        when(mongoTemplate.findById("franchise-1", Franchise.class)).thenReturn(Mono.just(franchise(4L)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class)).thenReturn(bulk);
+        when(bulk.execute()).thenReturn(Mono.just(bulkResult));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(migration.migrate())
+                .expectNext(1L)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> pending = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(pending.capture(), eq(Franchise.class));
+        assertThat(pending.getValue().getQueryObject())
+                .isEqualTo(new Document("branches.products.0", new Document("$exists", true)));
+
+        verify(mongoTemplate, times(2)).bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class);
+        assertThat(upsertedIds()).containsExactly("prod-1", "prod-2", "prod-3");
+
+        ArgumentCaptor<Update> upsert = ArgumentCaptor.forClass(Update.class);
+        verify(bulk, atLeastOnce()).upsert(any(Query.class), upsert.capture());
+        assertThat(upsert.getAllValues().get(2).getUpdateObject()).isEqualTo(new Document("$set", new Document()
+                .append("franchiseId", "franchise-1")
+                .append("branchId", "branch-2")
+                .append("name", "Product 3")
+                .append("stock", 3)));
+
+        InOrder inOrder = inOrder(bulk, mongoTemplate);
+        inOrder.verify(bulk, times(2)).execute();
+        ArgumentCaptor<Query> clear = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> cleared = ArgumentCaptor.forClass(Update.class);
+        inOrder.verify(mongoTemplate).updateFirst(clear.capture(), cleared.capture(), eq(Franchise.class));
+        assertThat(clear.getValue().getQueryObject()).isEqualTo(new Document("id", "franchise-1").append("version", 4L));
+        assertThat(cleared.getValue().getUpdateObject()).isEqualTo(new Document()
+                .append("$set", new Document("branches.$[].products", List.of()))
+                .append("$inc", new Document("version", 1)));
+    }
+
+    @Test
+    void migrate_WhenNothingIsLeft_ShouldWriteNothing() {
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.empty());
+
+        StepVerifier.create(migration.migrate())
+                .expectNext(0L)
+                .verifyComplete();
+
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(ProductDocument.class));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Franchise.class));
+    }
+
+    @Test
+    void migrate_AfterAFailedRun_ShouldCopyTheSameProductsAgainAndFinish() {
+        AtomicInteger executions = new AtomicInteger();
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.just(Franchise.builder().id("franchise-1").build()));
+        when(mongoTemplate.findById("franchise-1", Franchise.class)).thenReturn(Mono.just(franchise(4L)));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class)).thenReturn(bulk);
+        when(bulk.execute()).thenAnswer(invocation -> executions.incrementAndGet() == 2
+                ? Mono.error(new IllegalStateException("connection lost"))
+                : Mono.just(bulkResult));
+
+        StepVerifier.create(migration.migrate())
+                .expectErrorMessage("connection lost")
+                .verify();
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Franchise.class));
+
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(migration.migrate())
+                .expectNext(1L)
+                .verifyComplete();
+
+        // The upserts are keyed by product id, so copying the first batch again replaces it.
+        assertThat(upsertedIds()).containsExactly("prod-1", "prod-2", "prod-3", "prod-1", "prod-2", "prod-3");
+        verify(mongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class), eq(Franchise.class));
+    }
+
+    @Test
+    void migrate_WhenFranchiseChangesDuringTheCopy_ShouldCopyItAgainFromAFreshRead() {
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger clears = new AtomicInteger();
+        when(mongoTemplate.find(any(Query.class), eq(Franchise.class))).thenReturn(Flux.just(Franchise.builder().id("franchise-1").build()));
+        when(mongoTemplate.findById("franchise-1", Franchise.class))
+                .thenAnswer(invocation -> Mono.just(franchise(4L + reads.getAndIncrement())));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class)).thenReturn(bulk);
+        when(bulk.execute()).thenReturn(Mono.just(bulkResult));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Franchise.class)))
+                .thenAnswer(invocation -> {
+                    long matched = clears.incrementAndGet() == 1 ? 0 : 1;
+                    return Mono.just(UpdateResult.acknowledged(matched, matched, null));
+                });
+
+        StepVerifier.create(migration.migrate())
+                .expectNext(1L)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> clear = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).updateFirst(clear.capture(), any(Update.class), eq(Franchise.class));
+        assertThat(clear.getAllValues())
+                .extracting(query -> query.getQueryObject().get("version"))
+                .containsExactly(4L, 5L);
+        verify(mongoTemplate, times(2)).findById("franchise-1", Franchise.class);
+    }
+
+    private List<Object> upsertedIds() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(bulk, atLeastOnce()).upsert(query.capture(), any(Update.class));
+        return query.getAllValues().stream().map(q -> q.getQueryObject().get("id")).toList();
+    }
+
+    private static Franchise franchise(long version) {
+        return Franchise.builder()
+                .id("franchise-1")
+                .name("Franchise")
+                .version(version)
+                .branches(List.of(
+                        Branch.builder().id("branch-1").name("Branch 1").products(List.of(
+                                Product.builder().id("prod-1").name("Product 1").stock(1).build(),
+                                Product.builder().id("prod-2").name("Product 2").stock(2).build())).build(),
+                        Branch.builder().id("branch-2").name("Branch 2").products(List.of(
+                                Product.builder().id("prod-3").name("Product 3").stock(3).build())).build()))
+                .build();
+    }
+}
@@ -0,0 +1,208 @@
+package com.franchise.api.service;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.RequestDTOs.BatchBranch;
+import com.franchise.api.dto.RequestDTOs.BatchFranchise;
+import com.franchise.api.dto.RequestDTOs.BatchProduct;
+import com.franchise.api.dto.RequestDTOs.BatchRequest;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.exception.ResourceNotFoundException;
+import com.franchise.api.id.ObjectIdGenerator;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.EmbeddedProductStore;
+import com.franchise.api.repository.FranchiseRepository;
+import com.mongodb.MongoException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchServiceTest {
+
+    @Mock
+    private FranchiseRepository franchiseRepository;
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    private BatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        properties.getBatch().setMaxOperations(5);
+        properties.getWriteRetry().setMinBackoff(Duration.ofMillis(1));
+        batchService = new BatchService(franchiseRepository, new EmbeddedProductStore(franchiseRepository),
+                transactionalOperator, new ObjectIdGenerator(), properties, new FranchiseCache(franchiseRepository, properties));
+
+        lenient().when(transactionalOperator.transactional(ArgumentMatchers.<Mono<List<String>>>any()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void applyBatch_ShouldInsertNewFranchiseTreeInOneWrite() {
+        BatchRequest request = request(BatchFranchise.builder()
+                .name("New Franchise")
+                .branches(List.of(BatchBranch.builder()
+                        .name("Branch")
+                        .products(List.of(BatchProduct.builder().name("Product").stock(3).build()))
+                        .build()))
+                .build());
+
+        when(franchiseRepository.insert(any(Franchise.class)))
+                .thenAnswer(invocation -> {
+                    Franchise franchise = invocation.getArgument(0);
+                    franchise.setId("franchise-new");
+                    return Mono.just(franchise);
+                });
+        when(franchiseRepository.findFranchise("franchise-new"))
+                .thenReturn(Mono.just(Franchise.builder().id("franchise-new").name("New Franchise").build()));
+
+        StepVerifier.create(batchService.applyBatch(request))
+                .assertNext(franchise -> assertThat(franchise.getId()).isEqualTo("franchise-new"))
+                .verifyComplete();
+
+        ArgumentCaptor<Franchise> inserted = ArgumentCaptor.forClass(Franchise.class);
+        verify(franchiseRepository).insert(inserted.capture());
+        Branch branch = inserted.getValue().getBranches().get(0);
+        assertThat(ObjectId.isValid(branch.getId())).isTrue();
+        assertThat(branch.getProducts()).singleElement()
+                .satisfies(product -> {
+                    assertThat(ObjectId.isValid(product.getId())).isTrue();
+                    assertThat(product.getStock()).isEqualTo(3);
+                });
+        verify(transactionalOperator).transactional(ArgumentMatchers.<Mono<List<String>>>any());
+    }
+
+    @Test
+    void applyBatch_ShouldApplyChangesToExistingFranchiseInOrder() {
+        BatchRequest request = request(BatchFranchise.builder()
+                .id("franchise-1")
+                .name("Renamed")
+                .branches(List.of(
+                        BatchBranch.builder()
+                                .id("branch-1")
+                                .products(List.of(BatchProduct.builder().id("prod-1").name("Renamed Product").build()))
+                                .build(),
+                        BatchBranch.builder().name("New Branch").build()))
+                .build());
+
+        Franchise existing = Franchise.builder().id("franchise-1").name("Renamed").build();
+        when(franchiseRepository.setFranchiseName("franchise-1", "Renamed")).thenReturn(Mono.just(existing));
+        when(franchiseRepository.setProductName("franchise-1", "branch-1", "prod-1", "Renamed Product"))
+                .thenReturn(Mono.just(Product.builder().id("prod-1").name("Renamed Product").stock(1).build()));
+        when(franchiseRepository.pushBranch(eq("franchise-1"), any(Branch.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(1)));
+        when(franchiseRepository.findFranchise("franchise-1")).thenReturn(Mono.just(existing));
+
+        StepVerifier.create(batchService.applyBatch(request))
+                .expectNext(existing)
+                .verifyComplete();
+
+        InOrder order = inOrder(franchiseRepository);
+        order.verify(franchiseRepository).setFranchiseName("franchise-1", "Renamed");
+        order.verify(franchiseRepository).setProductName("franchise-1", "branch-1", "prod-1", "Renamed Product");
+        order.verify(franchiseRepository).pushBranch(eq("franchise-1"), any(Branch.class));
+        verify(franchiseRepository, never()).setBranchName(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void applyBatch_ShouldFailWholeBatchWhenAnEntityIsMissing() {
+        BatchRequest request = request(
+                BatchFranchise.builder()
+                        .id("franchise-1")
+                        .branches(List.of(BatchBranch.builder().id("missing-branch").name("Renamed").build()))
+                        .build(),
+                BatchFranchise.builder().name("Never Created").build());
+
+        when(franchiseRepository.findRevision("franchise-1"))
+                .thenReturn(Mono.just(Franchise.builder().id("franchise-1").version(1L).build()));
+        when(franchiseRepository.setBranchName("franchise-1", "missing-branch", "Renamed")).thenReturn(Mono.empty());
+
+        StepVerifier.create(batchService.applyBatch(request))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+
+        verify(franchiseRepository, never()).insert(any(Franchise.class));
+        verify(franchiseRepository, never()).findFranchise(anyString());
+    }
+
+    @Test
+    void applyBatch_ShouldRejectInvalidTreeBeforeOpeningTransaction() {
+        BatchRequest newBranchWithExistingProduct = request(BatchFranchise.builder()
+                .id("franchise-1")
+                .branches(List.of(BatchBranch.builder()
+                        .name("New Branch")
+                        .products(List.of(BatchProduct.builder().id("prod-1").name("Moved").build()))
+                        .build()))
+                .build());
+        BatchRequest tooLarge = request(
+                BatchFranchise.builder().name("A").build(),
+                BatchFranchise.builder().name("B").build(),
+                BatchFranchise.builder().name("C").build(),
+                BatchFranchise.builder().name("D").build(),
+                BatchFranchise.builder().name("E").build(),
+                BatchFranchise.builder().name("F").build());
+
+        StepVerifier.create(batchService.applyBatch(newBranchWithExistingProduct))
+                .expectError(InvalidRequestException.class)
+                .verify();
+        StepVerifier.create(batchService.applyBatch(tooLarge))
+                .expectError(InvalidRequestException.class)
+                .verify();
+        StepVerifier.create(batchService.applyBatch(request(BatchFranchise.builder().build())))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        verifyNoInteractions(transactionalOperator, franchiseRepository);
+    }
+
+    @Test
+    void applyBatch_ShouldRunTransactionAgainAfterTransientError() {
+        MongoException conflict = new MongoException(112, "WriteConflict");
+        conflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+        AtomicInteger attempts = new AtomicInteger();
+
+        Franchise renamed = Franchise.builder().id("franchise-1").name("Renamed").build();
+        when(franchiseRepository.setFranchiseName("franchise-1", "Renamed"))
+                .thenReturn(Mono.defer(() -> attempts.getAndIncrement() == 0
+                        ? Mono.error(new DataIntegrityViolationException("conflict", conflict))
+                        : Mono.just(renamed)));
+        when(franchiseRepository.findFranchise("franchise-1")).thenReturn(Mono.just(renamed));
+
+        StepVerifier.create(batchService.applyBatch(request(BatchFranchise.builder().id("franchise-1").name("Renamed").build())))
+                .expectNext(renamed)
+                .verifyComplete();
+
+        assertThat(attempts).hasValue(2);
+    }
+
+    private static BatchRequest request(BatchFranchise... franchises) {
+        return BatchRequest.builder()
+                .franchises(List.of(franchises))
+                .build();
+    }
+}
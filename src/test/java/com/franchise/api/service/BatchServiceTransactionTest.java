@@ -0,0 +1,101 @@
+package com.franchise.api.service;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.config.MongoTransactionConfig;
+import com.franchise.api.dto.RequestDTOs.BatchBranch;
+import com.franchise.api.dto.RequestDTOs.BatchFranchise;
+import com.franchise.api.dto.RequestDTOs.BatchProduct;
+import com.franchise.api.dto.RequestDTOs.BatchRequest;
+import com.franchise.api.exception.ResourceNotFoundException;
+import com.franchise.api.id.ObjectIdGenerator;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.repository.EmbeddedProductStore;
+import com.franchise.api.repository.FranchiseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs batches against an embedded single-node replica set, the smallest deployment that
+ * supports transactions. Needs to download a MongoDB binary, so it only runs with
+ * {@code gradle integrationTest}.
+ */
+@Tag("integration")
+@DataMongoTest(properties = {
+        "de.flapdoodle.mongodb.embedded.version=7.0.2",
+        "de.flapdoodle.mongodb.embedded.storage.repl-set-name=rs0"
+})
+@Import({BatchService.class, EmbeddedProductStore.class, FranchiseCache.class, ObjectIdGenerator.class,
+        MongoTransactionConfig.class})
+@EnableConfigurationProperties(FranchiseProperties.class)
+class BatchServiceTransactionTest {
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private FranchiseRepository franchiseRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Collections cannot be created implicitly inside a transaction on older servers.
+        StepVerifier.create(mongoTemplate.dropCollection(Franchise.class)
+                        .then(mongoTemplate.createCollection(Franchise.class)))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void applyBatch_ShouldCommitEveryChange() {
+        BatchRequest request = BatchRequest.builder()
+                .franchises(List.of(BatchFranchise.builder()
+                        .name("Franchise")
+                        .branches(List.of(BatchBranch.builder()
+                                .name("Branch")
+                                .products(List.of(BatchProduct.builder().name("Product").stock(5).build()))
+                                .build()))
+                        .build()))
+                .build();
+
+        StepVerifier.create(batchService.applyBatch(request))
+                .assertNext(franchise -> assertThat(franchise.getBranches().get(0).getProducts()).hasSize(1))
+                .verifyComplete();
+    }
+
+    @Test
+    void applyBatch_ShouldRollBackEveryChangeOnFailure() {
+        Franchise existing = franchiseRepository.save(Franchise.builder().name("Original").build()).block();
+
+        BatchRequest request = BatchRequest.builder()
+                .franchises(List.of(
+                        BatchFranchise.builder().id(existing.getId()).name("Renamed").build(),
+                        BatchFranchise.builder().name("Created").build(),
+                        BatchFranchise.builder()
+                                .id(existing.getId())
+                                .branches(List.of(BatchBranch.builder().id("missing").name("Renamed").build()))
+                                .build()))
+                .build();
+
+        StepVerifier.create(batchService.applyBatch(request))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+
+        StepVerifier.create(franchiseRepository.findAll())
+                .assertNext(franchise -> assertThat(franchise.getName()).isEqualTo("Original"))
+                .verifyComplete();
+    }
+}
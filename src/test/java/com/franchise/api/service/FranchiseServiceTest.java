@@ -1,15 +1,24 @@
 package com.franchise.api.service;
 
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
 import com.franchise.api.dto.RequestDTOs.*;
+import com.franchise.api.dto.StockEvent;
+import com.franchise.api.dto.TopProductResponse;
+import com.franchise.api.event.StockEventBroadcaster;
+import com.franchise.api.exception.InsufficientStockException;
+import com.franchise.api.exception.InvalidRequestException;
 import com.franchise.api.exception.ResourceNotFoundException;
+import com.franchise.api.id.ObjectIdGenerator;
 import com.franchise.api.model.Branch;
 import com.franchise.api.model.Franchise;
 import com.franchise.api.model.Product;
+import com.franchise.api.repository.EmbeddedProductStore;
 import com.franchise.api.repository.FranchiseRepository;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
@@ -18,8 +27,12 @@ import reactor.test.StepVerifier;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,13 +41,19 @@ class FranchiseServiceTest {
     @Mock
     private FranchiseRepository franchiseRepository;
 
-    @InjectMocks
+    private StockEventBroadcaster stockEventBroadcaster;
+
     private FranchiseService franchiseService;
 
     private Franchise testFranchise;
 
     @BeforeEach
     void setUp() {
+        FranchiseProperties properties = new FranchiseProperties();
+        stockEventBroadcaster = new StockEventBroadcaster(properties);
+        franchiseService = new FranchiseService(franchiseRepository, new EmbeddedProductStore(franchiseRepository), properties,
+                new FranchiseCache(franchiseRepository, properties), stockEventBroadcaster, new ObjectIdGenerator());
+
         Product testProduct = Product.builder()
                 .id("prod-1")
                 .name("Test Product")
@@ -86,38 +105,149 @@ class FranchiseServiceTest {
 
     @Test
     void getAllFranchises_ShouldReturnAllFranchises() {
-        when(franchiseRepository.findAll())
+        when(franchiseRepository.findAllFranchises())
                 .thenReturn(Flux.just(testFranchise));
 
         StepVerifier.create(franchiseService.getAllFranchises())
                 .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findAll();
+        verify(franchiseRepository, times(1)).findAllFranchises();
+    }
+
+    @Test
+    void getFranchises_WithCursor_ShouldReadKeysetPage() {
+        when(franchiseRepository.findPage("franchise-0", 100, List.of("name", "branches.id")))
+                .thenReturn(Flux.just(testFranchise));
+
+        StepVerifier.create(franchiseService.getFranchises("franchise-0", null, List.of("name", "branches.id")))
+                .expectNext(testFranchise)
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findAllFranchises();
+    }
+
+    @Test
+    void getFranchises_WithUnknownField_ShouldThrowException() {
+        StepVerifier.create(franchiseService.getFranchises(null, 10, List.of("branches.secret")))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        verifyNoInteractions(franchiseRepository);
     }
 
     @Test
     void getFranchiseById_WhenExists_ShouldReturnFranchise() {
-        when(franchiseRepository.findById("franchise-1"))
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
         StepVerifier.create(franchiseService.getFranchiseById("franchise-1"))
                 .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
+        verify(franchiseRepository, times(1)).findFranchise("franchise-1");
+    }
+
+    @Test
+    void getFranchiseById_WhenCached_ShouldNotQueryRepositoryAgain() {
+        when(franchiseRepository.findFranchise("franchise-1"))
+                .thenReturn(Mono.just(testFranchise));
+
+        StepVerifier.create(franchiseService.getFranchiseById("franchise-1")
+                        .then(franchiseService.getFranchiseById("franchise-1")))
+                .expectNext(testFranchise)
+                .verifyComplete();
+
+        verify(franchiseRepository, times(1)).findFranchise("franchise-1");
+    }
+
+    @Test
+    void getFranchiseById_WhenCachedCopyIsOlderThanVersion_ShouldReload() {
+        Franchise newer = Franchise.builder().id("franchise-1").name("Renamed").version(3L).build();
+        AtomicInteger reads = new AtomicInteger();
+        when(franchiseRepository.findFranchise("franchise-1"))
+                .thenAnswer(invocation -> Mono.just(reads.getAndIncrement() == 0 ? testFranchise : newer));
+
+        StepVerifier.create(franchiseService.getFranchiseById("franchise-1")
+                        .then(franchiseService.getFranchiseById("franchise-1", 3L)))
+                .expectNext(newer)
+                .verifyComplete();
+
+        verify(franchiseRepository, times(2)).findFranchise("franchise-1");
+    }
+
+    @Test
+    void getFranchiseVersion_ShouldReadProjectedRevision() {
+        when(franchiseRepository.findRevision("franchise-1"))
+                .thenReturn(Mono.just(Franchise.builder().id("franchise-1").version(7L).build()));
+
+        StepVerifier.create(franchiseService.getFranchiseVersion("franchise-1"))
+                .expectNext(7L)
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findFranchise("franchise-1");
+    }
+
+    @Test
+    void getFranchiseVersion_WhenNotExists_ShouldThrowException() {
+        when(franchiseRepository.findRevision("missing"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(franchiseService.getFranchiseVersion("missing"))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void getFranchiseByBranch_ShouldQueryByEmbeddedBranchId() {
+        when(franchiseRepository.findByBranch("branch-1"))
+                .thenReturn(Mono.just(testFranchise));
+
+        StepVerifier.create(franchiseService.getFranchiseByBranch("branch-1"))
+                .expectNext(testFranchise)
+                .verifyComplete();
+    }
+
+    @Test
+    void getFranchiseByProduct_WhenNotExists_ShouldThrowException() {
+        when(franchiseRepository.findByProduct("missing"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(franchiseService.getFranchiseByProduct("missing"))
+                .expectErrorMatches(error -> error instanceof ResourceNotFoundException
+                        && error.getMessage().contains("Product not found"))
+                .verify();
+    }
+
+    @Test
+    void updateProductStock_ShouldInvalidateCachedFranchise() {
+        UpdateStockRequest request = UpdateStockRequest.builder()
+                .stock(200)
+                .build();
+
+        when(franchiseRepository.findFranchise("franchise-1"))
+                .thenReturn(Mono.just(testFranchise));
+        when(franchiseRepository.setProductStock("franchise-1", "branch-1", "prod-1", 200))
+                .thenReturn(Mono.just(Product.builder().id("prod-1").stock(200).build()));
+
+        StepVerifier.create(franchiseService.getFranchiseById("franchise-1")
+                        .then(franchiseService.updateProductStock("franchise-1", "branch-1", "prod-1", request)))
+                .expectNext(testFranchise)
+                .verifyComplete();
+
+        verify(franchiseRepository, times(2)).findFranchise("franchise-1");
     }
 
     @Test
     void getFranchiseById_WhenNotExists_ShouldThrowException() {
-        when(franchiseRepository.findById("non-existent"))
+        when(franchiseRepository.findFranchise("non-existent"))
                 .thenReturn(Mono.empty());
 
         StepVerifier.create(franchiseService.getFranchiseById("non-existent"))
                 .expectError(ResourceNotFoundException.class)
                 .verify();
 
-        verify(franchiseRepository, times(1)).findById("non-existent");
+        verify(franchiseRepository, times(1)).findFranchise("non-existent");
     }
 
     @Test
@@ -132,111 +262,282 @@ class FranchiseServiceTest {
                 .branches(testFranchise.getBranches())
                 .build();
 
-        when(franchiseRepository.findById("franchise-1"))
-                .thenReturn(Mono.just(testFranchise));
-        when(franchiseRepository.save(any(Franchise.class)))
+        when(franchiseRepository.setFranchiseName("franchise-1", "Updated Name"))
                 .thenReturn(Mono.just(updatedFranchise));
 
         StepVerifier.create(franchiseService.updateFranchiseName("franchise-1", request))
                 .expectNextMatches(franchise -> franchise.getName().equals("Updated Name"))
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
-        verify(franchiseRepository, times(1)).save(any(Franchise.class));
+        verify(franchiseRepository, times(1)).setFranchiseName("franchise-1", "Updated Name");
+        verify(franchiseRepository, never()).save(any(Franchise.class));
     }
 
     @Test
-    void addBranchToFranchise_ShouldAddBranchAndReturnFranchise() {
+    void updateFranchiseName_WhenNotExists_ShouldThrowException() {
+        UpdateNameRequest request = UpdateNameRequest.builder()
+                .name("Updated Name")
+                .build();
+
+        when(franchiseRepository.setFranchiseName("non-existent", "Updated Name"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(franchiseService.updateFranchiseName("non-existent", request))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void addBranchToFranchise_ShouldPushBranchAndReturnFranchise() {
         CreateBranchRequest request = CreateBranchRequest.builder()
                 .name("New Branch")
                 .build();
 
-        when(franchiseRepository.findById("franchise-1"))
-                .thenReturn(Mono.just(testFranchise));
-        when(franchiseRepository.save(any(Franchise.class)))
+        when(franchiseRepository.pushBranch(eq("franchise-1"), any(Branch.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(1)));
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
         StepVerifier.create(franchiseService.addBranchToFranchise("franchise-1", request))
-                .expectNextMatches(franchise -> 
-                    franchise.getBranches().size() == 2 &&
-                    franchise.getBranches().get(1).getName().equals("New Branch")
-                )
+                .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
-        verify(franchiseRepository, times(1)).save(any(Franchise.class));
+        verify(franchiseRepository, times(1)).pushBranch(eq("franchise-1"),
+                argThat(branch -> branch.getName().equals("New Branch") && branch.getId() != null));
+        verify(franchiseRepository, never()).save(any(Franchise.class));
     }
 
     @Test
-    void addProductToBranch_ShouldAddProductAndReturnFranchise() {
+    void addProductToBranch_ShouldPushProductAndReturnFranchise() {
         CreateProductRequest request = CreateProductRequest.builder()
                 .name("New Product")
                 .stock(50)
                 .build();
 
-        when(franchiseRepository.findById("franchise-1"))
-                .thenReturn(Mono.just(testFranchise));
-        when(franchiseRepository.save(any(Franchise.class)))
+        when(franchiseRepository.pushProduct(eq("franchise-1"), eq("branch-1"), any(Product.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(2)));
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
         StepVerifier.create(franchiseService.addProductToBranch("franchise-1", "branch-1", request))
-                .expectNextMatches(franchise -> {
-                    Branch branch = franchise.getBranches().get(0);
-                    return branch.getProducts().size() == 2 &&
-                           branch.getProducts().get(1).getName().equals("New Product") &&
-                           branch.getProducts().get(1).getStock() == 50;
-                })
+                .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
-        verify(franchiseRepository, times(1)).save(any(Franchise.class));
+        verify(franchiseRepository, times(1)).pushProduct(eq("franchise-1"), eq("branch-1"),
+                argThat(product -> product.getName().equals("New Product") && product.getStock() == 50));
+        verify(franchiseRepository, never()).save(any(Franchise.class));
+    }
+
+    @Test
+    void addBranch_ShouldReturnOnlyTheNewBranch() {
+        CreateBranchRequest request = CreateBranchRequest.builder()
+                .name("New Branch")
+                .build();
+
+        when(franchiseRepository.pushBranch(eq("franchise-1"), any(Branch.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(1)));
+
+        StepVerifier.create(franchiseService.addBranch("franchise-1", request))
+                .expectNextMatches(branch -> branch.getName().equals("New Branch") && ObjectId.isValid(branch.getId()))
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findFranchise(anyString());
     }
 
     @Test
-    void deleteProductFromBranch_ShouldRemoveProductAndReturnFranchise() {
-        when(franchiseRepository.findById("franchise-1"))
+    void setProductStock_ShouldReturnOnlyTheProductWithoutReloading() {
+        UpdateStockRequest request = UpdateStockRequest.builder()
+                .stock(200)
+                .build();
+        Product updated = Product.builder().id("prod-1").name("Test Product").stock(200).build();
+
+        when(franchiseRepository.setProductStock("franchise-1", "branch-1", "prod-1", 200))
+                .thenReturn(Mono.just(updated));
+
+        StepVerifier.create(franchiseService.setProductStock("franchise-1", "branch-1", "prod-1", request))
+                .expectNext(updated)
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findFranchise(anyString());
+    }
+
+    @Test
+    void addProductToBranch_WhenBranchNotExists_ShouldThrowException() {
+        CreateProductRequest request = CreateProductRequest.builder()
+                .name("New Product")
+                .stock(50)
+                .build();
+
+        when(franchiseRepository.pushProduct(eq("franchise-1"), eq("missing-branch"), any(Product.class)))
+                .thenReturn(Mono.empty());
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
-        when(franchiseRepository.save(any(Franchise.class)))
+
+        StepVerifier.create(franchiseService.addProductToBranch("franchise-1", "missing-branch", request))
+                .expectErrorMatches(error -> error instanceof ResourceNotFoundException &&
+                        error.getMessage().contains("Branch not found"))
+                .verify();
+    }
+
+    @Test
+    void deleteProductFromBranch_ShouldPullProductAndReturnFranchise() {
+        Product removed = testFranchise.getBranches().get(0).getProducts().get(0);
+
+        when(franchiseRepository.pullProduct("franchise-1", "branch-1", "prod-1"))
+                .thenReturn(Mono.just(removed));
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
         StepVerifier.create(franchiseService.deleteProductFromBranch("franchise-1", "branch-1", "prod-1"))
-                .expectNextMatches(franchise -> {
-                    Branch branch = franchise.getBranches().get(0);
-                    return branch.getProducts().isEmpty();
-                })
+                .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
-        verify(franchiseRepository, times(1)).save(any(Franchise.class));
+        verify(franchiseRepository, times(1)).pullProduct("franchise-1", "branch-1", "prod-1");
+        verify(franchiseRepository, never()).save(any(Franchise.class));
     }
 
     @Test
-    void updateProductStock_ShouldUpdateStockAndReturnFranchise() {
+    void deleteProductFromBranch_WhenProductNotExists_ShouldThrowException() {
+        when(franchiseRepository.pullProduct("franchise-1", "branch-1", "missing-product"))
+                .thenReturn(Mono.empty());
+        when(franchiseRepository.findFranchise("franchise-1"))
+                .thenReturn(Mono.just(testFranchise));
+
+        StepVerifier.create(franchiseService.deleteProductFromBranch("franchise-1", "branch-1", "missing-product"))
+                .expectErrorMatches(error -> error instanceof ResourceNotFoundException &&
+                        error.getMessage().contains("Product not found"))
+                .verify();
+    }
+
+    @Test
+    void updateProductStock_ShouldSetStockAtomically() {
         UpdateStockRequest request = UpdateStockRequest.builder()
                 .stock(200)
                 .build();
 
-        when(franchiseRepository.findById("franchise-1"))
-                .thenReturn(Mono.just(testFranchise));
-        when(franchiseRepository.save(any(Franchise.class)))
+        Product updated = Product.builder()
+                .id("prod-1")
+                .name("Test Product")
+                .stock(200)
+                .build();
+
+        when(franchiseRepository.setProductStock("franchise-1", "branch-1", "prod-1", 200))
+                .thenReturn(Mono.just(updated));
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
         StepVerifier.create(franchiseService.updateProductStock("franchise-1", "branch-1", "prod-1", request))
-                .expectNextMatches(franchise -> {
-                    Product product = franchise.getBranches().get(0).getProducts().get(0);
-                    return product.getStock() == 200;
-                })
+                .expectNext(testFranchise)
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
-        verify(franchiseRepository, times(1)).save(any(Franchise.class));
+        verify(franchiseRepository, times(1)).setProductStock("franchise-1", "branch-1", "prod-1", 200);
+        verify(franchiseRepository, never()).save(any(Franchise.class));
     }
 
     @Test
-    void getTopProductsByBranch_ShouldReturnTopProductsPerBranch() {
-        when(franchiseRepository.findById("franchise-1"))
+    void updateProductStock_WhenFranchiseNotExists_ShouldThrowException() {
+        UpdateStockRequest request = UpdateStockRequest.builder()
+                .stock(200)
+                .build();
+
+        when(franchiseRepository.setProductStock("non-existent", "branch-1", "prod-1", 200))
+                .thenReturn(Mono.empty());
+        when(franchiseRepository.findFranchise("non-existent"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(franchiseService.updateProductStock("non-existent", "branch-1", "prod-1", request))
+                .expectErrorMatches(error -> error instanceof ResourceNotFoundException &&
+                        error.getMessage().contains("Franchise not found"))
+                .verify();
+    }
+
+    @Test
+    void adjustProductStock_ShouldIncrementStockAtomically() {
+        AdjustStockRequest request = AdjustStockRequest.builder()
+                .delta(-3)
+                .build();
+
+        Product updated = Product.builder()
+                .id("prod-1")
+                .name("Test Product")
+                .stock(97)
+                .build();
+
+        when(franchiseRepository.incrementProductStock("franchise-1", "branch-1", "prod-1", -3))
+                .thenReturn(Mono.just(updated));
+
+        StepVerifier.create(franchiseService.adjustProductStock("franchise-1", "branch-1", "prod-1", request))
+                .expectNextMatches(product -> product.getStock() == 97)
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findFranchise(anyString());
+    }
+
+    @Test
+    void adjustProductStock_WhenStockWouldBeNegative_ShouldThrowConflict() {
+        AdjustStockRequest request = AdjustStockRequest.builder()
+                .delta(-500)
+                .build();
+
+        when(franchiseRepository.incrementProductStock("franchise-1", "branch-1", "prod-1", -500))
+                .thenReturn(Mono.empty());
+        when(franchiseRepository.findFranchise("franchise-1"))
                 .thenReturn(Mono.just(testFranchise));
 
+        StepVerifier.create(franchiseService.adjustProductStock("franchise-1", "branch-1", "prod-1", request))
+                .expectError(InsufficientStockException.class)
+                .verify();
+    }
+
+    @Test
+    void streamStockEvents_ShouldOnlyDeliverEventsOfTheRequestedBranch() {
+        when(franchiseRepository.existsFranchise("franchise-1"))
+                .thenReturn(Mono.just(true));
+
+        StockEvent otherBranch = StockEvent.builder()
+                .franchiseId("franchise-1").branchId("branch-2").productId("prod-9").stock(1)
+                .type(StockEvent.Type.UPDATED).build();
+        StockEvent sameBranch = StockEvent.builder()
+                .franchiseId("franchise-1").branchId("branch-1").productId("prod-1").stock(7)
+                .type(StockEvent.Type.UPDATED).build();
+
+        StepVerifier.create(franchiseService.streamStockEvents("franchise-1", "branch-1"))
+                .then(() -> {
+                    stockEventBroadcaster.publish(otherBranch);
+                    stockEventBroadcaster.publish(sameBranch);
+                })
+                .expectNext(sameBranch)
+                .thenCancel()
+                .verify();
+
+        verify(franchiseRepository, never()).findFranchise(anyString());
+    }
+
+    @Test
+    void streamStockEvents_WhenFranchiseDoesNotExist_ShouldReturnNotFound() {
+        when(franchiseRepository.existsFranchise("missing"))
+                .thenReturn(Mono.just(false));
+
+        StepVerifier.create(franchiseService.streamStockEvents("missing", null))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void getTopProductsByBranch_ShouldReturnTopProductsPerBranch() {
+        TopProductResponse top = TopProductResponse.builder()
+                .productId("prod-1")
+                .productName("Test Product")
+                .stock(100)
+                .branchId("branch-1")
+                .branchName("Test Branch")
+                .build();
+
+        when(franchiseRepository.findTopProductsByBranch("franchise-1", 1))
+                .thenReturn(Flux.just(top));
+        when(franchiseRepository.existsFranchise("franchise-1"))
+                .thenReturn(Mono.just(true));
+
         StepVerifier.create(franchiseService.getTopProductsByBranch("franchise-1"))
                 .expectNextMatches(response ->
                     response.getProductName().equals("Test Product") &&
@@ -245,6 +546,28 @@ class FranchiseServiceTest {
                 )
                 .verifyComplete();
 
-        verify(franchiseRepository, times(1)).findById("franchise-1");
+        verify(franchiseRepository, times(1)).findTopProductsByBranch("franchise-1", 1);
+        verify(franchiseRepository, never()).findFranchise(anyString());
+    }
+
+    @Test
+    void getTopProductsByBranch_WhenFranchiseNotExists_ShouldThrowException() {
+        when(franchiseRepository.findTopProductsByBranch("non-existent", 3))
+                .thenReturn(Flux.empty());
+        when(franchiseRepository.existsFranchise("non-existent"))
+                .thenReturn(Mono.just(false));
+
+        StepVerifier.create(franchiseService.getTopProductsByBranch("non-existent", 3))
+                .expectError(ResourceNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void getTopProductsByBranch_WithInvalidLimit_ShouldThrowException() {
+        StepVerifier.create(franchiseService.getTopProductsByBranch("franchise-1", 0))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        verifyNoInteractions(franchiseRepository);
     }
 }
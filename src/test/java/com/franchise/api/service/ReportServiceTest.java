@@ -0,0 +1,75 @@
+package com.franchise.api.service;
+
+import com.franchise.api.dto.LowStockBranchReport;
+import com.franchise.api.dto.ProductStockReport;
+import com.franchise.api.exception.InvalidRequestException;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.EmbeddedProductStore;
+import com.franchise.api.repository.FranchiseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReportServiceTest {
+
+    @Mock
+    private FranchiseRepository franchiseRepository;
+
+    private ReportService reportService;
+
+    @BeforeEach
+    void setUp() {
+        reportService = new ReportService(new EmbeddedProductStore(franchiseRepository));
+    }
+
+    @Test
+    void getTopProducts_ShouldReturnGlobalTopProducts() {
+        ProductStockReport top = ProductStockReport.builder()
+                .franchiseId("franchise-1")
+                .branchId("branch-1")
+                .productId("prod-1")
+                .stock(100)
+                .build();
+
+        when(franchiseRepository.findTopProducts(10))
+                .thenReturn(Flux.just(top));
+
+        StepVerifier.create(reportService.getTopProducts(10))
+                .expectNext(top)
+                .verifyComplete();
+    }
+
+    @Test
+    void getTopProducts_WithInvalidLimit_ShouldThrowException() {
+        StepVerifier.create(reportService.getTopProducts(0))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        verifyNoInteractions(franchiseRepository);
+    }
+
+    @Test
+    void getLowStockBranches_ShouldReturnBranchesBelowThreshold() {
+        LowStockBranchReport report = LowStockBranchReport.builder()
+                .franchiseId("franchise-1")
+                .branchId("branch-1")
+                .products(List.of(Product.builder().id("prod-1").stock(2).build()))
+                .build();
+
+        when(franchiseRepository.findLowStockBranches(5))
+                .thenReturn(Flux.just(report));
+
+        StepVerifier.create(reportService.getLowStockBranches(5))
+                .expectNext(report)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,213 @@
+package com.franchise.api.service;
+
+import com.franchise.api.cache.FranchiseCache;
+import com.franchise.api.config.FranchiseProperties;
+import com.franchise.api.dto.BulkStockUpdateResult.Status;
+import com.franchise.api.dto.RequestDTOs.BulkStockUpdateItem;
+import com.franchise.api.model.Branch;
+import com.franchise.api.model.Franchise;
+import com.franchise.api.model.Product;
+import com.franchise.api.repository.BulkStockWrite;
+import com.franchise.api.repository.BulkStockWrite.Outcome;
+import com.franchise.api.repository.EmbeddedProductStore;
+import com.franchise.api.repository.FranchiseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockBulkServiceTest {
+
+    @Mock
+    private FranchiseRepository franchiseRepository;
+
+    private StockBulkService stockBulkService;
+
+    private FranchiseProperties properties;
+
+    @Captor
+    private ArgumentCaptor<List<BulkStockUpdateItem>> batches;
+
+    private Franchise testFranchise;
+
+    @BeforeEach
+    void setUp() {
+        properties = new FranchiseProperties();
+        properties.getBulk().setBatchSize(2);
+        stockBulkService = new StockBulkService(franchiseRepository, new EmbeddedProductStore(franchiseRepository), properties,
+                new FranchiseCache(franchiseRepository, properties));
+
+        List<Product> products = new ArrayList<>();
+        products.add(Product.builder().id("prod-1").name("Test Product").stock(5).build());
+
+        List<Branch> branches = new ArrayList<>();
+        branches.add(Branch.builder().id("branch-1").name("Test Branch").products(products).build());
+
+        testFranchise = Franchise.builder()
+                .id("franchise-1")
+                .name("Test Franchise")
+                .branches(branches)
+                .build();
+    }
+
+    @Test
+    void bulkUpdateStock_ShouldWriteOneBulkPerBatch() {
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenAnswer(invocation -> applied(invocation.getArgument(0)));
+
+        Flux<BulkStockUpdateItem> items = Flux.range(0, 5)
+                .map(i -> item("prod-1", i, null));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(items))
+                .expectNextCount(5)
+                .verifyComplete();
+
+        verify(franchiseRepository, times(3)).bulkUpdateStock(anyList());
+        verify(franchiseRepository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    void bulkUpdateStock_ShouldReportPerItemResultsInInputOrder() {
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenReturn(write(Outcome.APPLIED, Outcome.UNMATCHED));
+        when(franchiseRepository.findFranchises(anyCollection()))
+                .thenReturn(Flux.just(testFranchise));
+
+        Flux<BulkStockUpdateItem> items = Flux.just(
+                item("prod-1", null, -1),
+                item("missing-product", 10, null),
+                item("prod-1", null, null));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(items))
+                .expectNextMatches(result -> result.getIndex() == 0 && result.getStatus() == Status.APPLIED)
+                .expectNextMatches(result -> result.getIndex() == 1 && result.getStatus() == Status.NOT_FOUND)
+                .expectNextMatches(result -> result.getIndex() == 2 && result.getStatus() == Status.INVALID)
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkUpdateStock_WhenGuardRejectsDelta_ShouldReportConflict() {
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenReturn(write(Outcome.UNMATCHED));
+        when(franchiseRepository.findFranchises(anyCollection()))
+                .thenReturn(Flux.just(testFranchise));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(Flux.just(item("prod-1", null, -50))))
+                .expectNextMatches(result -> result.getStatus() == Status.CONFLICT)
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkUpdateStock_WhenSomeDecrementsAreRejected_ShouldReportOnlyThoseAsConflicts() {
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenReturn(write(Outcome.APPLIED, Outcome.UNMATCHED));
+        when(franchiseRepository.findFranchises(anyCollection()))
+                .thenReturn(Flux.just(testFranchise));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(Flux.just(item("prod-1", null, -3), item("prod-1", null, -3))))
+                .expectNextMatches(result -> result.getIndex() == 0 && result.getStatus() == Status.APPLIED)
+                .expectNextMatches(result -> result.getIndex() == 1 && result.getStatus() == Status.CONFLICT)
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkUpdateStock_WhenAWriteFails_ShouldReportOnlyThatItemAsFailed() {
+        properties.getBulk().setBatchSize(3);
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenReturn(write(Outcome.APPLIED, Outcome.failed("duplicate key"), Outcome.APPLIED));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(
+                        Flux.just(item("prod-1", 1, null), item("prod-1", 2, null), item("prod-1", 3, null))))
+                .expectNextMatches(result -> result.getStatus() == Status.APPLIED)
+                .expectNextMatches(result -> result.getStatus() == Status.FAILED && result.getMessage().equals("duplicate key"))
+                .expectNextMatches(result -> result.getStatus() == Status.APPLIED)
+                .verifyComplete();
+
+        verify(franchiseRepository, never()).findFranchises(anyCollection());
+    }
+
+    @Test
+    void bulkUpdateStock_WhenAnIncrementFindsTheProductAgain_ShouldReportItAsFailed() {
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenReturn(write(Outcome.UNMATCHED));
+        when(franchiseRepository.findFranchises(anyCollection()))
+                .thenReturn(Flux.just(testFranchise));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(Flux.just(item("prod-1", null, 3))))
+                .expectNextMatches(result -> result.getStatus() == Status.FAILED && result.getMessage().startsWith("Not applied"))
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkUpdateStock_ShouldWaitForEarlierBatchesOfTheSameFranchise() {
+        properties.getBulk().setBatchSize(1);
+        properties.getBulk().setConcurrency(3);
+        Sinks.One<BulkStockWrite> firstWrite = Sinks.one();
+        AtomicInteger writes = new AtomicInteger();
+        when(franchiseRepository.bulkUpdateStock(anyList()))
+                .thenAnswer(invocation -> writes.incrementAndGet() == 1
+                        ? firstWrite.asMono()
+                        : applied(invocation.getArgument(0)));
+
+        Flux<BulkStockUpdateItem> items = Flux.just(
+                stockOf("franchise-1", "prod-1", 1),
+                stockOf("franchise-2", "prod-2", 2),
+                stockOf("franchise-1", "prod-1", 3));
+
+        StepVerifier.create(stockBulkService.bulkUpdateStock(items))
+                .then(() -> assertThat(writes).hasValue(2))
+                .then(() -> firstWrite.tryEmitValue(new BulkStockWrite(List.of(Outcome.APPLIED))))
+                .expectNextCount(3)
+                .verifyComplete();
+
+        verify(franchiseRepository, times(3)).bulkUpdateStock(batches.capture());
+        assertThat(batches.getAllValues())
+                .extracting(batch -> batch.get(0).getStock())
+                .containsExactly(1, 2, 3);
+    }
+
+    private static Mono<BulkStockWrite> applied(List<BulkStockUpdateItem> items) {
+        return Mono.just(new BulkStockWrite(Collections.nCopies(items.size(), Outcome.APPLIED)));
+    }
+
+    private static Mono<BulkStockWrite> write(Outcome... outcomes) {
+        return Mono.just(new BulkStockWrite(List.of(outcomes)));
+    }
+
+    private static BulkStockUpdateItem stockOf(String franchiseId, String productId, Integer stock) {
+        return BulkStockUpdateItem.builder()
+                .franchiseId(franchiseId)
+                .branchId("branch-1")
+                .productId(productId)
+                .stock(stock)
+                .build();
+    }
+
+    private static BulkStockUpdateItem item(String productId, Integer stock, Integer delta) {
+        return BulkStockUpdateItem.builder()
+                .franchiseId("franchise-1")
+                .branchId("branch-1")
+                .productId(productId)
+                .stock(stock)
+                .delta(delta)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.franchise.api.sharding;
+
+import com.franchise.api.config.FranchiseProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardKeyWebFilterTest {
+
+    private final ShardKeyWebFilter filter = new ShardKeyWebFilter(new FranchiseProperties());
+
+    private final AtomicReference<String> region = new AtomicReference<>();
+
+    private final WebFilterChain chain = exchange -> ShardKey.inShard(current -> {
+        region.set(current);
+        return Mono.empty();
+    });
+
+    @Test
+    void filter_WithHeader_ShouldPutRegionInContext() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/franchises").header("X-Region", "eu-west"));
+
+        StepVerifier.create(filter.filter(exchange, chain)).verifyComplete();
+
+        assertThat(region).hasValue("eu-west");
+    }
+
+    @Test
+    void filter_WithoutHeader_ShouldUseDefaultRegion() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/franchises"));
+
+        StepVerifier.create(filter.filter(exchange, chain)).verifyComplete();
+
+        assertThat(region).hasValue("default");
+    }
+
+    @Test
+    void filter_WithInvalidHeader_ShouldRejectRequest() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/api/franchises").header("X-Region", "eu west/1"));
+
+        StepVerifier.create(filter.filter(exchange, chain))
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        assertThat(region).hasNullValue();
+    }
+}